@@ -0,0 +1,251 @@
+package dbf_data;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * This program benchmarks loading, saving, sorting, and iterating over .dbf
+ * tables of synthetic data, so that any change to DBFFileIO or DBFTable can
+ * be measured before and after. For each layout and size it runs a number of
+ * warmup iterations, which aren't reported, followed by measured iterations,
+ * and prints the throughput along with how much memory was allocated and how
+ * much garbage collecting happened along the way. The JMH benchmarks in
+ * jmh/ are the main way to measure; this program is for when JMH can't be
+ * downloaded.
+ * 
+ * Compile it along with the src classes and run it, for example:
+ * 
+ * 		javac -d out src/dbf_data/*.java bench/dbf_data/*.java
+ * 		java -Xmx8g -cp out dbf_data.DBFBenchmark -records 1000,100000,1000000
+ * 
+ * Options, all of which are optional:
+ * 
+ * 		-records	Comma separated record counts, 1000 to 10000000.
+ * 		-layouts	Comma separated layouts: narrow, wide, numeric.
+ * 		-benchmarks	Comma separated benchmarks: load, save, sort, resort, iterate.
+ * 		-warmup		Number of warmup iterations.
+ * 		-iterations	Number of measured iterations.
+ * 		-dir		Where to keep the generated files.
+ * 
+ * @author Aaron Meltzer
+ */
+public class DBFBenchmark
+{
+	// THE BENCHMARKS WE CAN RUN
+	private static final String LOAD = "load";
+	private static final String SAVE = "save";
+	private static final String SORT = "sort";
+	private static final String RESORT = "resort";
+	private static final String ITERATE = "iterate";
+
+	// DEFAULTS FOR WHEN NO OPTIONS ARE PROVIDED
+	private static final String DEFAULT_RECORDS = "1000,100000,1000000";
+	private static final String DEFAULT_BENCHMARKS = LOAD + "," + SAVE + "," + SORT + "," + RESORT + "," + ITERATE;
+	private static final int DEFAULT_WARMUP = 3;
+	private static final int DEFAULT_ITERATIONS = 5;
+
+	// KEEPS THE JIT FROM THROWING OUR WORK AWAY
+	private static long sink;
+
+	/**
+	 * Runs the requested benchmarks and prints a line of results for each.
+	 * 
+	 * @param args Options as described above.
+	 * 
+	 * @throws IOException Thrown when generating or reading the data fails.
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		String records = DEFAULT_RECORDS;
+		String layouts = DBFBenchmarkData.NARROW + "," + DBFBenchmarkData.WIDE + "," + DBFBenchmarkData.NUMERIC;
+		String benchmarks = DEFAULT_BENCHMARKS;
+		int warmup = DEFAULT_WARMUP;
+		int iterations = DEFAULT_ITERATIONS;
+		File dir = new File(System.getProperty("java.io.tmpdir"), "dbf_bench");
+		for (int i = 0; i + 1 < args.length; i += 2)
+		{
+			if (args[i].equals("-records"))			records = args[i + 1];
+			else if (args[i].equals("-layouts"))		layouts = args[i + 1];
+			else if (args[i].equals("-benchmarks"))	benchmarks = args[i + 1];
+			else if (args[i].equals("-warmup"))		warmup = Integer.parseInt(args[i + 1]);
+			else if (args[i].equals("-iterations"))	iterations = Integer.parseInt(args[i + 1]);
+			else if (args[i].equals("-dir"))			dir = new File(args[i + 1]);
+			else
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+		}
+
+		System.out.println(String.format(	"%-8s %-8s %9s %11s %13s %12s %13s %6s %8s",
+											"bench", "layout", "records", "ms/op", "records/s",
+											"alloc MB/s", "alloc B/rec", "gc", "gc ms"));
+		String[] layoutNames = layouts.split(",");
+		String[] recordCounts = records.split(",");
+		String[] benchmarkNames = benchmarks.split(",");
+		for (int i = 0; i < layoutNames.length; i++)
+		{
+			for (int j = 0; j < recordCounts.length; j++)
+			{
+				int numRecords = Integer.parseInt(recordCounts[j].trim());
+				File file = DBFBenchmarkData.getFile(dir, layoutNames[i].trim(), numRecords);
+				for (int k = 0; k < benchmarkNames.length; k++)
+					run(benchmarkNames[k].trim(), layoutNames[i].trim(), numRecords, file, dir, warmup, iterations);
+			}
+		}
+	}
+
+	/**
+	 * This helper method runs one benchmark against one file and prints its results.
+	 */
+	private static void run(	String benchmark,
+								String layout,
+								int numRecords,
+								File file,
+								File dir,
+								int warmup,
+								int iterations) throws IOException
+	{
+		DBFFileIO dbfFileIO = new DBFFileIO();
+		File saveFile = new File(dir, "bench_save.dbf");
+
+		// EVERYTHING BUT LOADING NEEDS A TABLE TO WORK ON
+		DBFTable table = null;
+		if (!benchmark.equals(LOAD))
+			table = dbfFileIO.loadDBF(file);
+
+		long totalTime = 0;
+		long totalBytes = 0;
+		long totalGCs = 0;
+		long totalGCTime = 0;
+		try
+		{
+			for (int i = 0; i < warmup + iterations; i++)
+			{
+				// THE TABLE REMEMBERS SORT ORDERS, SO CHANGE THE SORT FIELD
+				// TO MAKE IT SORT AGAIN FROM SCRATCH
+				if (benchmark.equals(SORT))
+					touchSortField(table);
+
+				long gcsBefore = getGCCount();
+				long gcTimeBefore = getGCTime();
+				long bytesBefore = getAllocatedBytes();
+				long timeBefore = System.nanoTime();
+
+				if (benchmark.equals(LOAD))
+					sink += dbfFileIO.loadDBF(file).getNumRecords();
+				else if (benchmark.equals(SAVE))
+					dbfFileIO.saveDBF(table, saveFile);
+				else if (benchmark.equals(SORT) || benchmark.equals(RESORT))
+					sink += table.sortRecords(DBFBenchmarkData.SORT_FIELD, (i % 2) == 0).size();
+				else if (benchmark.equals(ITERATE))
+					sink += iterate(table);
+				else
+					throw new IllegalArgumentException("No benchmark named " + benchmark);
+
+				// ONLY COUNT THE MEASURED ITERATIONS
+				if (i >= warmup)
+				{
+					totalTime += System.nanoTime() - timeBefore;
+					totalBytes += getAllocatedBytes() - bytesBefore;
+					totalGCs += getGCCount() - gcsBefore;
+					totalGCTime += getGCTime() - gcTimeBefore;
+				}
+			}
+		}
+		catch(RuntimeException re)
+		{
+			// REPORT IT AND KEEP GOING WITH THE OTHER BENCHMARKS
+			System.out.println(String.format("%-8s %-8s %9d FAILED: %s", benchmark, layout, numRecords, re));
+			return;
+		}
+		finally
+		{
+			saveFile.delete();
+		}
+
+		double seconds = totalTime / 1e9;
+		System.out.println(String.format(	"%-8s %-8s %9d %11.2f %13.0f %12.1f %13.1f %6d %8d",
+											benchmark,
+											layout,
+											numRecords,
+											(totalTime / 1e6) / iterations,
+											((double)numRecords * iterations) / seconds,
+											(totalBytes / (1024.0 * 1024.0)) / seconds,
+											(double)totalBytes / ((double)numRecords * iterations),
+											totalGCs,
+											totalGCTime));
+	}
+
+	/**
+	 * This helper method sets the sort field of the first record to what
+	 * it already is, which makes the table forget that field's sort orders.
+	 */
+	private static void touchSortField(DBFTable table)
+	{
+		DBFFieldRef sortField = table.getFieldRef(DBFBenchmarkData.SORT_FIELD);
+		DBFRecord record = table.recordsIterator().next();
+		sortField.setData(record, sortField.getData(record));
+	}
+
+	/**
+	 * This helper method goes through every piece of data in the table
+	 * argument, in key order, the way the viewer does.
+	 */
+	private static long iterate(DBFTable table)
+	{
+		long total = 0;
+		Iterator<DBFRecord> it = table.recordsIterator();
+		while (it.hasNext())
+		{
+			DBFRecord record = it.next();
+			for (int i = 0; i < record.getNumFields(); i++)
+			{
+				// THE TYPED ACCESSORS DON'T BOX NUMBERS
+				if (table.getField(i).getType() == DBFFieldType.N)
+					total += record.getLong(i);
+				else
+				{
+					String text = record.getString(i);
+					if (text != null)
+						total += text.hashCode();
+				}
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * This helper method gets how many bytes this thread has allocated so far.
+	 */
+	private static long getAllocatedBytes()
+	{
+		return ((com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean())
+					.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * This helper method gets how many garbage collections have happened so far.
+	 */
+	private static long getGCCount()
+	{
+		long count = 0;
+		ArrayList<GarbageCollectorMXBean> collectors = new ArrayList<GarbageCollectorMXBean>(ManagementFactory.getGarbageCollectorMXBeans());
+		for (int i = 0; i < collectors.size(); i++)
+			count += Math.max(0, collectors.get(i).getCollectionCount());
+		return count;
+	}
+
+	/**
+	 * This helper method gets how many milliseconds have been spent collecting garbage so far.
+	 */
+	private static long getGCTime()
+	{
+		long time = 0;
+		ArrayList<GarbageCollectorMXBean> collectors = new ArrayList<GarbageCollectorMXBean>(ManagementFactory.getGarbageCollectorMXBeans());
+		for (int i = 0; i < collectors.size(); i++)
+			time += Math.max(0, collectors.get(i).getCollectionTime());
+		return time;
+	}
+}
@@ -0,0 +1,240 @@
+package dbf_data;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * This class generates synthetic .dbf files for the benchmarks. Each layout
+ * has its own mix of C and N fields and field widths, and the data is made
+ * from a fixed seed so the same file is generated every time. The first
+ * field of every layout is unique, since DBFTable keys its records on it.
+ * Generated files are kept in a directory and reused by later runs.
+ * 
+ * Note that files are written byte by byte here rather than with
+ * DBFFileIO.saveDBF so that generating them doesn't depend on the code
+ * being measured.
+ * 
+ * @author Aaron Meltzer
+ */
+public class DBFBenchmarkData
+{
+	// TEXT IS STORED ONE BYTE PER CHARACTER
+	private static final Charset CHARSET = Charset.forName("ISO-8859-1");
+
+	// THE LAYOUTS WE KNOW HOW TO GENERATE
+	public static final String NARROW = "narrow";
+	public static final String WIDE = "wide";
+	public static final String NUMERIC = "numeric";
+	public static final String[] LAYOUTS = { NARROW, WIDE, NUMERIC };
+
+	// THE FIELD EVERY LAYOUT'S BENCHMARKS SORT BY
+	public static final String SORT_FIELD = "VOTES";
+
+	// SOME TEXT TO FILL C FIELDS WITH
+	private static final String[] CANDIDATES = { "Obama", "McCain", "Bush", "Kerry", "Gore", "Dole", "Clinton" };
+
+	/**
+	 * This method gets the generated file for the layout and numRecords
+	 * arguments, generating it first if it isn't in the dir argument yet.
+	 * 
+	 * @param dir Directory to keep generated files in.
+	 * 
+	 * @param layout One of the LAYOUTS.
+	 * 
+	 * @param numRecords Number of records the file should have.
+	 * 
+	 * @return The generated .dbf file.
+	 * 
+	 * @throws IOException Thrown when writing the file fails.
+	 */
+	public static File getFile(File dir, String layout, int numRecords) throws IOException
+	{
+		File file = new File(dir, "bench_" + layout + "_" + numRecords + ".dbf");
+		if (!file.exists())
+		{
+			dir.mkdirs();
+			File tempFile = new File(dir, file.getName() + ".tmp");
+			generate(tempFile, layout, numRecords);
+			if (!tempFile.renameTo(file))
+				throw new IOException("Could not rename " + tempFile);
+		}
+		return file;
+	}
+
+	/**
+	 * This method writes a .dbf file with the layout argument's fields and
+	 * the numRecords argument's number of records.
+	 * 
+	 * @param file File to write.
+	 * 
+	 * @param layout One of the LAYOUTS.
+	 * 
+	 * @param numRecords Number of records to write.
+	 * 
+	 * @throws IOException Thrown when writing the file fails.
+	 */
+	public static void generate(File file, String layout, int numRecords) throws IOException
+	{
+		String[] names = getFieldNames(layout);
+		char[] types = getFieldTypes(layout);
+		int[] lengths = getFieldLengths(layout);
+		int recordLength = 1;
+		for (int i = 0; i < lengths.length; i++)
+			recordLength += lengths[i];
+		int headerLength = 32 + (32 * names.length) + 1;
+
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+		try
+		{
+			// THE HEADER, WITH NUMBERS IN LITTLE ENDIAN ORDER
+			byte[] header = new byte[32];
+			header[0] = 3;
+			header[1] = 112;
+			header[2] = 6;
+			header[3] = 9;
+			putLittleEndian(header, 4, numRecords, 4);
+			putLittleEndian(header, 8, headerLength, 2);
+			putLittleEndian(header, 10, recordLength, 2);
+			out.write(header);
+
+			// THE FIELD DESCRIPTORS
+			for (int i = 0; i < names.length; i++)
+			{
+				byte[] descriptor = new byte[32];
+				byte[] name = names[i].getBytes(CHARSET);
+				System.arraycopy(name, 0, descriptor, 0, Math.min(name.length, 10));
+				descriptor[11] = (byte)types[i];
+				descriptor[16] = (byte)lengths[i];
+				descriptor[17] = (byte)(isDecimal(names[i]) ? 2 : 0);
+				out.write(descriptor);
+			}
+			out.write(0x0D);
+
+			// AND THE RECORDS
+			Random random = new Random(numRecords);
+			byte[] record = new byte[recordLength];
+			for (int i = 0; i < numRecords; i++)
+			{
+				Arrays.fill(record, (byte)' ');
+				int offset = 1;
+				for (int j = 0; j < names.length; j++)
+				{
+					String text = makeData(names[j], i, random);
+					byte[] bytes = text.getBytes(CHARSET);
+					int length = Math.min(bytes.length, lengths[j]);
+
+					// NUMBERS ARE RIGHT JUSTIFIED, TEXT IS LEFT JUSTIFIED
+					int start = offset;
+					if (types[j] == 'N')
+						start += lengths[j] - length;
+					System.arraycopy(bytes, 0, record, start, length);
+					offset += lengths[j];
+				}
+				out.write(record);
+			}
+			out.write(0x1A);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * Accessor method for getting the names of a layout's fields.
+	 * 
+	 * @param layout One of the LAYOUTS.
+	 * 
+	 * @return The field names, in file order.
+	 */
+	public static String[] getFieldNames(String layout)
+	{
+		if (layout.equals(NARROW))
+			return new String[] { "STATE_NAME", "STATE_ABBR", "VOTES", "WINNER", "SHARE" };
+		else if (layout.equals(WIDE))
+			return new String[] { "STATE_NAME", "COUNTY", "NOTES", "VOTES", "WINNER", "RUNNER_UP", "COMMENTS", "SHARE" };
+		else if (layout.equals(NUMERIC))
+			return new String[] { "STATE_NAME", "VOTES", "DEM", "REP", "OTHER", "TURNOUT", "SHARE", "MARGIN", "YEAR" };
+		throw new IllegalArgumentException("No layout named " + layout);
+	}
+
+	/**
+	 * This helper method gets the types of a layout's fields.
+	 */
+	private static char[] getFieldTypes(String layout)
+	{
+		if (layout.equals(NARROW))
+			return new char[] { 'C', 'C', 'N', 'C', 'N' };
+		else if (layout.equals(WIDE))
+			return new char[] { 'C', 'C', 'C', 'N', 'C', 'C', 'C', 'N' };
+		return new char[] { 'C', 'N', 'N', 'N', 'N', 'N', 'N', 'N', 'N' };
+	}
+
+	/**
+	 * This helper method gets the lengths of a layout's fields.
+	 */
+	private static int[] getFieldLengths(String layout)
+	{
+		if (layout.equals(NARROW))
+			return new int[] { 20, 4, 4, 30, 8 };
+		else if (layout.equals(WIDE))
+			return new int[] { 40, 60, 254, 6, 80, 80, 200, 10 };
+		return new int[] { 12, 6, 12, 12, 12, 10, 8, 8, 4 };
+	}
+
+	/**
+	 * This helper method tests to see if the named field holds decimal numbers.
+	 */
+	private static boolean isDecimal(String fieldName)
+	{
+		return fieldName.equals("SHARE") || fieldName.equals("TURNOUT") || fieldName.equals("MARGIN");
+	}
+
+	/**
+	 * This helper method makes the data for one field of one record. Note that
+	 * some numbers are left blank, as they sometimes are in real files.
+	 */
+	private static String makeData(String fieldName, int recordIndex, Random random)
+	{
+		if (fieldName.equals("STATE_NAME"))
+			return "State" + recordIndex;
+		else if (fieldName.equals("STATE_ABBR"))
+			return "S" + (recordIndex % 100);
+		else if (fieldName.equals("COUNTY"))
+			return "County " + random.nextInt(3000) + " of State" + (recordIndex % 50);
+		else if (fieldName.equals("NOTES") || fieldName.equals("COMMENTS"))
+		{
+			StringBuilder text = new StringBuilder();
+			int numWords = random.nextInt(20);
+			for (int i = 0; i < numWords; i++)
+				text.append(CANDIDATES[random.nextInt(CANDIDATES.length)]).append(' ');
+			return text.toString();
+		}
+		else if (fieldName.equals("WINNER") || fieldName.equals("RUNNER_UP"))
+			return CANDIDATES[random.nextInt(CANDIDATES.length)];
+		else if (fieldName.equals("YEAR"))
+			return "" + (1788 + (4 * random.nextInt(57)));
+		else if ((recordIndex % 13) == 0)
+			return "";
+		else if (isDecimal(fieldName))
+			return String.format("%.2f", random.nextInt(1000000) / 100.0);
+		else if (fieldName.equals("VOTES"))
+			return "" + random.nextInt(60);
+		return "" + random.nextInt(100000000);
+	}
+
+	/**
+	 * This helper method puts a number into the bytes argument in little endian order.
+	 */
+	private static void putLittleEndian(byte[] bytes, int offset, int num, int numBytes)
+	{
+		for (int i = 0; i < numBytes; i++)
+			bytes[offset + i] = (byte)(num >>> (8 * i));
+	}
+}
@@ -0,0 +1,152 @@
+package dbf_data;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+/**
+ * This program measures how fast fields are decoded and how much memory
+ * decoding them allocates, comparing DBFFieldDecoder to the old way of
+ * making a trimmed String for every field and parsing that. It's the
+ * fallback for DBFFieldDecoderBenchmarks in jmh/, for when JMH can't be
+ * downloaded. Run it with the compiled src classes on the classpath, for
+ * example:
+ * 
+ * 		javac -d out src/dbf_data/*.java bench/dbf_data/*.java
+ * 		java -cp out dbf_data.DBFFieldDecoderBenchmark
+ * 
+ * @author Aaron Meltzer
+ */
+public class DBFFieldDecoderBenchmark
+{
+	// TEXT IS STORED ONE BYTE PER CHARACTER
+	private static final Charset CHARSET = Charset.forName("ISO-8859-1");
+
+	// HOW MANY FIELDS OF EACH KIND TO DECODE PER PASS
+	private static final int NUM_FIELDS = 100000;
+	private static final int FIELD_LENGTH = 12;
+	private static final int WARMUP_PASSES = 20;
+	private static final int MEASURED_PASSES = 20;
+
+	// KEEPS THE JIT FROM THROWING OUR WORK AWAY
+	private static long sink;
+
+	/**
+	 * Runs the benchmark and prints a line for each decoder.
+	 * 
+	 * @param args Not used.
+	 */
+	public static void main(String[] args)
+	{
+		byte[] longs = makeFields(false);
+		byte[] doubles = makeFields(true);
+		byte[] texts = makeTexts();
+
+		System.out.println("decoder                ns/field   bytes/field");
+		for (int kind = 0; kind < 6; kind++)
+		{
+			// WARM UP FIRST SO WE'RE MEASURING COMPILED CODE
+			for (int i = 0; i < WARMUP_PASSES; i++)
+				runPass(kind, longs, doubles, texts);
+
+			long bytesBefore = allocatedBytes();
+			long timeBefore = System.nanoTime();
+			for (int i = 0; i < MEASURED_PASSES; i++)
+				runPass(kind, longs, doubles, texts);
+			long time = System.nanoTime() - timeBefore;
+			long bytes = allocatedBytes() - bytesBefore;
+
+			double numDecoded = (double)NUM_FIELDS * MEASURED_PASSES;
+			System.out.println(String.format(	"%-22s %9.2f %13.2f",
+												getName(kind),
+												time / numDecoded,
+												bytes / numDecoded));
+		}
+		if (sink == 42)
+			System.out.println();
+	}
+
+	/**
+	 * This helper method decodes every field once using the kind argument decoder.
+	 */
+	private static void runPass(int kind, byte[] longs, byte[] doubles, byte[] texts)
+	{
+		long total = 0;
+		for (int i = 0; i < NUM_FIELDS; i++)
+		{
+			int offset = i * FIELD_LENGTH;
+			switch (kind)
+			{
+				case 0:	total += Long.parseLong(new String(longs, offset, FIELD_LENGTH, CHARSET).trim());					break;
+				case 1:	total += DBFFieldDecoder.parseLong(longs, offset, FIELD_LENGTH);									break;
+				case 2:	total += (long)Double.parseDouble(new String(doubles, offset, FIELD_LENGTH, CHARSET).trim());		break;
+				case 3:	total += (long)DBFFieldDecoder.parseDouble(doubles, offset, FIELD_LENGTH);							break;
+				case 4:	total += new String(texts, offset, FIELD_LENGTH, CHARSET).trim().length();						break;
+				default:	total += DBFFieldDecoder.trimEnd(texts, DBFFieldDecoder.trimStart(texts, offset, FIELD_LENGTH), offset + FIELD_LENGTH);
+			}
+		}
+		sink += total;
+	}
+
+	/**
+	 * This helper method names the kind argument decoder.
+	 */
+	private static String getName(int kind)
+	{
+		switch (kind)
+		{
+			case 0:		return "N String+parseLong";
+			case 1:		return "N parseLong";
+			case 2:		return "N String+parseDouble";
+			case 3:		return "N parseDouble";
+			case 4:		return "C String+trim";
+			default:	return "C trim offsets";
+		}
+	}
+
+	/**
+	 * This helper method makes right justified numeric fields like a .dbf file has.
+	 */
+	private static byte[] makeFields(boolean decimal)
+	{
+		byte[] bytes = new byte[NUM_FIELDS * FIELD_LENGTH];
+		Random random = new Random(NUM_FIELDS);
+		for (int i = 0; i < NUM_FIELDS; i++)
+		{
+			String text;
+			if (decimal)
+				text = String.format("%.2f", random.nextInt(10000000) / 100.0);
+			else
+				text = Integer.toString(random.nextInt(1000000) - 500000);
+			while (text.length() < FIELD_LENGTH)
+				text = " " + text;
+			System.arraycopy(text.getBytes(CHARSET), 0, bytes, i * FIELD_LENGTH, FIELD_LENGTH);
+		}
+		return bytes;
+	}
+
+	/**
+	 * This helper method makes left justified text fields padded with blanks.
+	 */
+	private static byte[] makeTexts()
+	{
+		byte[] bytes = new byte[NUM_FIELDS * FIELD_LENGTH];
+		for (int i = 0; i < NUM_FIELDS; i++)
+		{
+			String text = "State" + (i % 1000);
+			while (text.length() < FIELD_LENGTH)
+				text = text + " ";
+			System.arraycopy(text.getBytes(CHARSET), 0, bytes, i * FIELD_LENGTH, FIELD_LENGTH);
+		}
+		return bytes;
+	}
+
+	/**
+	 * This helper method gets how many bytes this thread has allocated so far.
+	 */
+	private static long allocatedBytes()
+	{
+		return ((com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean())
+					.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
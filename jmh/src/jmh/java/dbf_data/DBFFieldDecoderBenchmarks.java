@@ -0,0 +1,158 @@
+package dbf_data;
+
+import java.nio.charset.Charset;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * These JMH benchmarks measure how fast fields are decoded, comparing
+ * DBFFieldDecoder to the old way of making a trimmed String for every
+ * field and parsing that, like DBFFieldDecoderBenchmark does by hand.
+ * Each operation decodes one field. Run them with the gc profiler to see
+ * the bytes allocated per field, as described in the README.
+ * 
+ * @author Aaron Meltzer
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DBFFieldDecoderBenchmarks
+{
+	// TEXT IS STORED ONE BYTE PER CHARACTER
+	private static final Charset CHARSET = Charset.forName("ISO-8859-1");
+
+	// HOW MANY FIELDS OF EACH KIND TO DECODE PER OPERATION
+	private static final int NUM_FIELDS = 100000;
+	private static final int FIELD_LENGTH = 12;
+
+	// THE FIELDS, ONE AFTER ANOTHER, LIKE IN A RECORD
+	private byte[] longs;
+	private byte[] doubles;
+	private byte[] texts;
+
+	/**
+	 * This method makes the fields to decode.
+	 */
+	@Setup
+	public void setUp()
+	{
+		longs = makeFields(false);
+		doubles = makeFields(true);
+		texts = makeTexts();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_FIELDS)
+	public long stringParseLong()
+	{
+		long total = 0;
+		for (int i = 0; i < NUM_FIELDS; i++)
+			total += Long.parseLong(new String(longs, i * FIELD_LENGTH, FIELD_LENGTH, CHARSET).trim());
+		return total;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_FIELDS)
+	public long parseLong()
+	{
+		long total = 0;
+		for (int i = 0; i < NUM_FIELDS; i++)
+			total += DBFFieldDecoder.parseLong(longs, i * FIELD_LENGTH, FIELD_LENGTH);
+		return total;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_FIELDS)
+	public double stringParseDouble()
+	{
+		double total = 0;
+		for (int i = 0; i < NUM_FIELDS; i++)
+			total += Double.parseDouble(new String(doubles, i * FIELD_LENGTH, FIELD_LENGTH, CHARSET).trim());
+		return total;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_FIELDS)
+	public double parseDouble()
+	{
+		double total = 0;
+		for (int i = 0; i < NUM_FIELDS; i++)
+			total += DBFFieldDecoder.parseDouble(doubles, i * FIELD_LENGTH, FIELD_LENGTH);
+		return total;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_FIELDS)
+	public long stringTrim()
+	{
+		long total = 0;
+		for (int i = 0; i < NUM_FIELDS; i++)
+			total += new String(texts, i * FIELD_LENGTH, FIELD_LENGTH, CHARSET).trim().length();
+		return total;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_FIELDS)
+	public long trimOffsets()
+	{
+		long total = 0;
+		for (int i = 0; i < NUM_FIELDS; i++)
+		{
+			int start = DBFFieldDecoder.trimStart(texts, i * FIELD_LENGTH, FIELD_LENGTH);
+			total += DBFFieldDecoder.trimEnd(texts, start, (i + 1) * FIELD_LENGTH) - start;
+		}
+		return total;
+	}
+
+	/**
+	 * This helper method makes right justified numeric fields like a .dbf file has.
+	 */
+	private static byte[] makeFields(boolean decimal)
+	{
+		byte[] bytes = new byte[NUM_FIELDS * FIELD_LENGTH];
+		Random random = new Random(NUM_FIELDS);
+		for (int i = 0; i < NUM_FIELDS; i++)
+		{
+			String text;
+			if (decimal)
+				text = String.format("%.2f", random.nextInt(10000000) / 100.0);
+			else
+				text = Integer.toString(random.nextInt(1000000) - 500000);
+			while (text.length() < FIELD_LENGTH)
+				text = " " + text;
+			System.arraycopy(text.getBytes(CHARSET), 0, bytes, i * FIELD_LENGTH, FIELD_LENGTH);
+		}
+		return bytes;
+	}
+
+	/**
+	 * This helper method makes left justified text fields padded with blanks.
+	 */
+	private static byte[] makeTexts()
+	{
+		byte[] bytes = new byte[NUM_FIELDS * FIELD_LENGTH];
+		for (int i = 0; i < NUM_FIELDS; i++)
+		{
+			String text = "State" + (i % 1000);
+			while (text.length() < FIELD_LENGTH)
+				text = text + " ";
+			System.arraycopy(text.getBytes(CHARSET), 0, bytes, i * FIELD_LENGTH, FIELD_LENGTH);
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,212 @@
+package dbf_data;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * These JMH benchmarks load, save, sort, and iterate over .dbf tables of
+ * synthetic data, the same work DBFBenchmark does by hand, using the same
+ * DBFBenchmarkData files. Each benchmark does a whole load, save, sort, or
+ * pass per operation. Run them with the gc profiler to see how much memory
+ * each operation allocates, as described in the README:
+ * 
+ * 		gradle :jmh:jmh
+ * 
+ * @author Aaron Meltzer
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx8g" })
+public class DBFTableBenchmarks
+{
+	// WHICH GENERATED FILE TO USE
+	@Param({ DBFBenchmarkData.NARROW, DBFBenchmarkData.WIDE, DBFBenchmarkData.NUMERIC })
+	public String layout;
+
+	@Param({ "1000", "100000", "1000000" })
+	public int records;
+
+	// THE FILE, AND A TABLE LOADED FROM IT FOR EVERYTHING BUT LOADING
+	private DBFFileIO dbfFileIO;
+	private File file;
+	private File saveFile;
+	private DBFTable table;
+
+	/**
+	 * This method generates the file if it isn't there yet, and loads it.
+	 * 
+	 * @throws IOException Thrown when generating or reading the file fails.
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws IOException
+	{
+		File dir = new File(System.getProperty("java.io.tmpdir"), "dbf_bench");
+		dbfFileIO = new DBFFileIO();
+		file = DBFBenchmarkData.getFile(dir, layout, records);
+		saveFile = new File(dir, "jmh_save_" + layout + "_" + records + ".dbf");
+		table = dbfFileIO.loadDBF(file);
+	}
+
+	/**
+	 * This method cleans up the saved file.
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		saveFile.delete();
+	}
+
+	/**
+	 * Loads the whole file into a table.
+	 * 
+	 * @return The table, so that the work isn't thrown away.
+	 * 
+	 * @throws IOException Thrown when reading the file fails.
+	 */
+	@Benchmark
+	public DBFTable load() throws IOException
+	{
+		return dbfFileIO.loadDBF(file);
+	}
+
+	/**
+	 * Loads the whole file into a table, decoding it on all the cores.
+	 * 
+	 * @return The table, so that the work isn't thrown away.
+	 * 
+	 * @throws IOException Thrown when reading the file fails.
+	 */
+	@Benchmark
+	public DBFTable loadInParallel() throws IOException
+	{
+		return dbfFileIO.loadDBFInParallel(file);
+	}
+
+	/**
+	 * Saves the whole table to a file.
+	 * 
+	 * @throws IOException Thrown when writing the file fails.
+	 */
+	@Benchmark
+	public void save() throws IOException
+	{
+		dbfFileIO.saveDBF(table, saveFile);
+	}
+
+	/**
+	 * Sorts the table by the sort field from scratch.
+	 * 
+	 * @param fresh Makes the table forget its sort orders first.
+	 * 
+	 * @return How many records were sorted.
+	 */
+	@Benchmark
+	public int sort(FreshSortOrders fresh)
+	{
+		return table.sortRecords(DBFBenchmarkData.SORT_FIELD, fresh.increasing).size();
+	}
+
+	/**
+	 * Sorts the table by the sort field again, using the remembered order.
+	 * 
+	 * @return How many records were sorted.
+	 */
+	@Benchmark
+	public int resort()
+	{
+		return table.sortRecords(DBFBenchmarkData.SORT_FIELD, true).size();
+	}
+
+	/**
+	 * Sorts the table by a text field and then the sort field from scratch.
+	 * 
+	 * @param fresh Makes the table forget its sort orders first.
+	 * 
+	 * @return How many records were sorted.
+	 */
+	@Benchmark
+	public int sortBySeveralFields(FreshSortOrders fresh)
+	{
+		String[] fieldNames = { DBFBenchmarkData.getFieldNames(layout)[1], DBFBenchmarkData.SORT_FIELD };
+		return table.sortRecords(fieldNames, new boolean[] { fresh.increasing, !fresh.increasing }).size();
+	}
+
+	/**
+	 * Goes through every piece of data in the table, in key order, the
+	 * way the viewer does.
+	 * 
+	 * @return A total of the data, so that the work isn't thrown away.
+	 */
+	@Benchmark
+	public long iterate()
+	{
+		long total = 0;
+		Iterator<DBFRecord> it = table.recordsIterator();
+		while (it.hasNext())
+		{
+			DBFRecord record = it.next();
+			for (int i = 0; i < record.getNumFields(); i++)
+			{
+				// THE TYPED ACCESSORS DON'T BOX NUMBERS
+				if (table.getField(i).getType() == DBFFieldType.N)
+					total += record.getLong(i);
+				else
+				{
+					String text = record.getString(i);
+					if (text != null)
+						total += text.hashCode();
+				}
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * This state makes the table forget its sort orders before each sort,
+	 * by setting every field of the first record to what it already is,
+	 * so that every sort starts from scratch. It also switches between
+	 * increasing and decreasing order each time.
+	 */
+	@State(Scope.Benchmark)
+	public static class FreshSortOrders
+	{
+		private boolean increasing;
+
+		/**
+		 * This method makes the table of the benchmarks argument forget its sort orders.
+		 *
+		 * @param benchmarks The benchmarks whose table is about to be sorted.
+		 */
+		@Setup(Level.Invocation)
+		public void forgetSortOrders(DBFTableBenchmarks benchmarks)
+		{
+			DBFTable table = benchmarks.table;
+			DBFRecord record = table.getRecordAt(0);
+			for (int i = 0; i < table.getNumFields(); i++)
+			{
+				DBFFieldRef fieldRef = table.getFieldRef(table.getField(i).getName());
+				fieldRef.setData(record, fieldRef.getData(record));
+			}
+			increasing = !increasing;
+		}
+	}
+}
@@ -0,0 +1,167 @@
+package dbf_data;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.GregorianCalendar;
+
+/**
+ * Objects of this class add records to the end of an existing .dbf file
+ * without loading or rewriting any of the records already in it. Records
+ * are buffered as they are added and each flush writes them after the last
+ * record, moves the 0x1A end of file marker after them, and patches the
+ * header's record count and last update date. A flush costs the same no
+ * matter how big the file already is.
+ * 
+ * Note that the count in the header is only patched once the new records
+ * and the end of file marker are written, so if something goes wrong part
+ * way through a flush the file still describes the records it had before.
+ * 
+ * Use DBFFileIO.appendTo to open one of these, and close it when done.
+ * 
+ * @author Aaron Meltzer
+ */
+public class DBFAppender implements Closeable
+{
+	// ROUGHLY HOW MANY BYTES OF RECORDS WE BUFFER BEFORE WRITING THEM
+	private static final int APPEND_BLOCK_SIZE = 1 << 20;
+
+	// dBASE MARKS THE END OF THE RECORDS WITH THIS
+	private static final byte END_OF_FILE = 0x1A;
+
+	// WHERE THE RECORD COUNT IS IN THE HEADER
+	private static final int NUMBER_OF_RECORDS_POSITION = 4;
+
+	// THE FILE WE'RE ADDING TO
+	private FileChannel channel;
+
+	// THE HEADER AND FIELDS, BUT NO RECORDS
+	private DBFTable header;
+
+	// USED FOR ENCODING THE RECORDS
+	private DBFFileIO dbfFileIO;
+
+	// WHERE EACH FIELD STARTS INSIDE A RECORD
+	private int[] fieldOffsets;
+	private byte[] recordBytes;
+
+	// RECORDS ADDED BUT NOT YET WRITTEN
+	private ByteBuffer buffer;
+	private int numBuffered;
+
+	// HOW MANY RECORDS ARE IN THE FILE, AND WHERE THE NEXT ONE GOES
+	private int numberOfRecords;
+	private long endOfRecords;
+
+	/**
+	 * This constructor sets up the appender to add records to the file
+	 * the channel argument is writing. Note that the header argument must
+	 * already have been loaded from the same file.
+	 * 
+	 * @param initChannel Channel reading and writing the .dbf file.
+	 * 
+	 * @param initHeader Table containing the file's header and fields.
+	 * 
+	 * @param initDBFFileIO Used for encoding records.
+	 * 
+	 * @throws IOException Thrown when the channel fails, or when the file
+	 * is shorter than its header says it is.
+	 */
+	DBFAppender(FileChannel initChannel, DBFTable initHeader, DBFFileIO initDBFFileIO) throws IOException
+	{
+		channel = initChannel;
+		header = initHeader;
+		dbfFileIO = initDBFFileIO;
+
+		fieldOffsets = dbfFileIO.getFieldOffsets(header);
+		recordBytes = new byte[dbfFileIO.getRecordLength(header)];
+		int recordsPerBlock = Math.max(1, APPEND_BLOCK_SIZE / recordBytes.length);
+		buffer = ByteBuffer.allocate(recordsPerBlock * recordBytes.length);
+
+		// NEW RECORDS GO RIGHT AFTER THE LAST ONE, OVER THE END OF FILE MARKER
+		numberOfRecords = header.getNumberOfRecords();
+		endOfRecords = (header.getPositionOfFirstDataRecorded() & 0xffff) + ((long)numberOfRecords * recordBytes.length);
+		if (endOfRecords > channel.size())
+			throw new EOFException();
+	}
+
+	// ACCESSOR METHODS
+	public DBFTable		getHeader()				{ return header;						}
+	public int			getNumberOfRecords()	{ return numberOfRecords + numBuffered;	}
+
+	/**
+	 * This method adds the recordToAdd argument to the end of the file. Note
+	 * that it is only buffered until the next flush, or until enough records
+	 * have been added to fill the buffer.
+	 * 
+	 * @param recordToAdd The record to add, which must have the same fields
+	 * as the file.
+	 * 
+	 * @throws IOException Thrown when writing a full buffer fails.
+	 * 
+	 * @throws IllegalArgumentException Thrown when the record doesn't
+	 * match the file's fields.
+	 */
+	public void addRecord(DBFRecord recordToAdd) throws IOException
+	{
+		if (recordToAdd.getNumFields() != header.getNumFields())
+			throw new IllegalArgumentException("Record has " + recordToAdd.getNumFields() + " fields, file has " + header.getNumFields());
+		if (!buffer.hasRemaining())
+			flush();
+		dbfFileIO.encodeRecord(recordToAdd, header, fieldOffsets, recordBytes);
+		buffer.put(recordBytes);
+		numBuffered++;
+	}
+
+	/**
+	 * This method writes all the buffered records to the end of the file,
+	 * followed by the end of file marker, and then updates the header.
+	 * 
+	 * @throws IOException Thrown when writing to the file fails.
+	 */
+	public void flush() throws IOException
+	{
+		if (numBuffered == 0)
+			return;
+
+		// THE RECORDS, WITH THE END OF FILE MARKER RIGHT AFTER THEM
+		buffer.flip();
+		long newEndOfRecords = endOfRecords + buffer.remaining();
+		dbfFileIO.write(channel, buffer, endOfRecords);
+		buffer.clear();
+		dbfFileIO.write(channel, ByteBuffer.wrap(new byte[] { END_OF_FILE }), newEndOfRecords);
+		channel.truncate(newEndOfRecords + 1);
+
+		// ONLY NOW DOES THE HEADER CLAIM THE NEW RECORDS
+		ByteBuffer count = ByteBuffer.allocate(4);
+		count.order(ByteOrder.LITTLE_ENDIAN);
+		count.putInt(0, numberOfRecords + numBuffered);
+		dbfFileIO.write(channel, count, NUMBER_OF_RECORDS_POSITION);
+		dbfFileIO.saveLastUpdate(channel, new GregorianCalendar());
+
+		numberOfRecords += numBuffered;
+		header.setNumberOfRecords(numberOfRecords);
+		endOfRecords = newEndOfRecords;
+		numBuffered = 0;
+	}
+
+	/**
+	 * This method writes any buffered records and releases the file.
+	 * 
+	 * @throws IOException Thrown when writing to or closing the file fails.
+	 */
+	public void close() throws IOException
+	{
+		try
+		{
+			flush();
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,346 @@
+package dbf_data;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Iterator;
+import java.util.TreeMap;
+
+/**
+ * Objects of this class keep track of all the .dbf files in a directory
+ * without loading any of them. Each file is probed by reading only its
+ * header and field descriptors, and what was learned, its record count,
+ * fields, year, and last update date, is kept in a small index file in
+ * the same directory. After that a file is only probed again if its length
+ * or modification time changes, so even a directory with hundreds of
+ * election files can be listed almost instantly.
+ * 
+ * @author Aaron Meltzer
+ */
+public class DBFCatalog
+{
+	// THE INDEX IS KEPT IN THE DIRECTORY IT DESCRIBES
+	public static final String INDEX_FILE_NAME = ".dbfcatalog";
+
+	// FIRST LINE OF THE INDEX, SO WE CAN TELL IF IT'S ONE OF OURS
+	private static final String INDEX_VERSION = "DBFCatalog 1";
+
+	// THE INDEX IS PLAIN TEXT
+	private static final Charset CHARSET = Charset.forName("ISO-8859-1");
+
+	// THE DIRECTORY WE'RE KEEPING TRACK OF
+	private File directory;
+
+	// USED FOR PROBING FILES
+	private DBFFileIO dbfFileIO;
+
+	// ONE ENTRY PER FILE, BY FILE NAME
+	private TreeMap<String,Entry> entries;
+
+	/**
+	 * This constructor sets up a catalog for the initDirectory argument.
+	 * Note that nothing is read until refresh is called.
+	 * 
+	 * @param initDirectory Directory containing the .dbf files.
+	 */
+	public DBFCatalog(File initDirectory)
+	{
+		directory = initDirectory;
+		dbfFileIO = new DBFFileIO();
+		entries = new TreeMap<String,Entry>();
+	}
+
+	// ACCESSOR METHODS
+	public File					getDirectory()				{ return directory;								}
+	public int					getNumEntries()				{ return entries.size();						}
+	public Entry				getEntry(String fileName)	{ return entries.get(fileName);					}
+	public ArrayList<Entry>		getEntries()				{ return new ArrayList<Entry>(entries.values());	}
+
+	/**
+	 * This method brings the catalog up to date with the directory. The
+	 * index file is read the first time, any .dbf file that's new or has
+	 * changed since it was indexed is probed, files that are gone are
+	 * dropped, and the index file is rewritten if anything changed.
+	 * 
+	 * @throws IOException Thrown when the directory can't be read. Files
+	 * that can't be probed are simply left out of the catalog.
+	 */
+	public void refresh() throws IOException
+	{
+		File[] files = directory.listFiles();
+		if (files == null)
+			throw new IOException("Can't list " + directory);
+
+		// START FROM WHAT WE ALREADY KNOW
+		File indexFile = new File(directory, INDEX_FILE_NAME);
+		TreeMap<String,Entry> known = entries;
+		if (known.isEmpty())
+			known = loadIndex(indexFile);
+
+		// AND ONLY PROBE WHAT WE DON'T
+		TreeMap<String,Entry> updated = new TreeMap<String,Entry>();
+		boolean changed = false;
+		for (int i = 0; i < files.length; i++)
+		{
+			File file = files[i];
+			if (!file.isFile() || !file.getName().toLowerCase().endsWith(".dbf"))
+				continue;
+			Entry entry = known.get(file.getName());
+			if ((entry == null)
+				|| (entry.fileLength != file.length())
+				|| (entry.fileLastModified != file.lastModified()))
+			{
+				// FILES WE CAN'T MAKE SENSE OF JUST AREN'T LISTED
+				try
+				{
+					entry = probe(file);
+				}
+				catch(IOException ioe)
+				{
+					continue;
+				}
+				changed = true;
+			}
+			updated.put(file.getName(), entry);
+		}
+		if (updated.size() != known.size())
+			changed = true;
+		entries = updated;
+
+		// THE INDEX IS ONLY A CACHE, SO NOT BEING ABLE TO WRITE IT IS FINE
+		if (changed || !indexFile.exists())
+		{
+			try
+			{
+				saveIndex(indexFile);
+			}
+			catch(IOException ioe)
+			{
+				// WE'LL JUST PROBE AGAIN NEXT TIME
+			}
+		}
+	}
+
+	/**
+	 * This helper method reads the header of the file argument and makes
+	 * an entry describing it.
+	 */
+	private Entry probe(File file) throws IOException
+	{
+		DBFTable header = dbfFileIO.loadDBFHeader(file);
+		Entry entry = new Entry();
+		entry.fileName = file.getName();
+		entry.fileLength = file.length();
+		entry.fileLastModified = file.lastModified();
+		entry.numberOfRecords = header.getNumberOfRecords();
+		entry.year = getYear(file.getName());
+		entry.lastModifiedDate = header.getLastModifiedDate();
+		int numFields = header.getNumFields();
+		entry.fieldNames = new String[numFields];
+		entry.fieldTypes = new DBFFieldType[numFields];
+		entry.fieldLengths = new int[numFields];
+		for (int i = 0; i < numFields; i++)
+		{
+			DBFField field = header.getField(i);
+			entry.fieldNames[i] = field.getName();
+			entry.fieldTypes[i] = field.getType();
+			entry.fieldLengths[i] = field.getLength();
+		}
+		return entry;
+	}
+
+	/**
+	 * This method gets the election year from a file name, which always
+	 * ends with the year just before the extension, as in
+	 * USAPresidentialElectionCandidates2008.dbf.
+	 * 
+	 * @param fileName Name of the file.
+	 * 
+	 * @return The year, or -1 if the name doesn't end with one.
+	 */
+	public static int getYear(String fileName)
+	{
+		int end = fileName.lastIndexOf('.');
+		if (end < 0)
+			end = fileName.length();
+		int start = end;
+		while ((start > 0) && Character.isDigit(fileName.charAt(start - 1)))
+			start--;
+		if ((end - start) != 4)
+			return -1;
+		return Integer.parseInt(fileName.substring(start, end));
+	}
+
+	/**
+	 * This helper method reads the index file. Anything wrong with it just
+	 * means those files will be probed again, so problems are ignored.
+	 */
+	private TreeMap<String,Entry> loadIndex(File indexFile)
+	{
+		TreeMap<String,Entry> index = new TreeMap<String,Entry>();
+		if (!indexFile.exists())
+			return index;
+		try
+		{
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), CHARSET));
+			try
+			{
+				if (!INDEX_VERSION.equals(reader.readLine()))
+					return index;
+				String line = reader.readLine();
+				while (line != null)
+				{
+					Entry entry = Entry.parse(line);
+					index.put(entry.fileName, entry);
+					line = reader.readLine();
+				}
+			}
+			finally
+			{
+				reader.close();
+			}
+		}
+		catch(IOException ioe)
+		{
+			index.clear();
+		}
+		catch(RuntimeException re)
+		{
+			// A DAMAGED LINE, START OVER
+			index.clear();
+		}
+		return index;
+	}
+
+	/**
+	 * This helper method writes the index file, replacing the old one in
+	 * one step so that a reader never sees half of it.
+	 */
+	private void saveIndex(File indexFile) throws IOException
+	{
+		File tempFile = new File(directory, INDEX_FILE_NAME + ".tmp");
+		BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), CHARSET));
+		try
+		{
+			writer.write(INDEX_VERSION);
+			writer.newLine();
+			Iterator<Entry> entriesIt = entries.values().iterator();
+			while (entriesIt.hasNext())
+			{
+				writer.write(entriesIt.next().toString());
+				writer.newLine();
+			}
+		}
+		finally
+		{
+			writer.close();
+		}
+		Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Objects of this class describe one .dbf file in the catalog.
+	 */
+	public static class Entry
+	{
+		// WHICH FILE, AND HOW IT LOOKED WHEN WE PROBED IT
+		private String fileName;
+		private long fileLength;
+		private long fileLastModified;
+
+		// WHAT ITS HEADER SAYS
+		private int numberOfRecords;
+		private int year;
+		private GregorianCalendar lastModifiedDate;
+		private String[] fieldNames;
+		private DBFFieldType[] fieldTypes;
+		private int[] fieldLengths;
+
+		// ACCESSOR METHODS
+		public String				getFileName()				{ return fileName;					}
+		public int					getNumberOfRecords()		{ return numberOfRecords;			}
+		public int					getYear()					{ return year;						}
+		public GregorianCalendar	getLastModifiedDate()		{ return lastModifiedDate;			}
+		public int					getNumFields()				{ return fieldNames.length;			}
+		public String				getFieldName(int index)		{ return fieldNames[index];			}
+		public DBFFieldType			getFieldType(int index)		{ return fieldTypes[index];			}
+		public int					getFieldLength(int index)	{ return fieldLengths[index];		}
+
+		/**
+		 * Tests to see if the file has a field with the testName argument.
+		 * 
+		 * @param testName Field name to look for.
+		 * 
+		 * @return true if the file has such a field, false otherwise.
+		 */
+		public boolean containsNamedColumn(String testName)
+		{
+			return Arrays.asList(fieldNames).contains(testName);
+		}
+
+		/**
+		 * Writes this entry as one tab separated line of the index.
+		 */
+		public String toString()
+		{
+			StringBuilder line = new StringBuilder();
+			line.append(fileName).append('\t');
+			line.append(fileLength).append('\t');
+			line.append(fileLastModified).append('\t');
+			line.append(numberOfRecords).append('\t');
+			line.append(year).append('\t');
+			line.append(lastModifiedDate.get(Calendar.YEAR)).append('-');
+			line.append(lastModifiedDate.get(Calendar.MONTH)).append('-');
+			line.append(lastModifiedDate.get(Calendar.DATE));
+			for (int i = 0; i < fieldNames.length; i++)
+			{
+				line.append('\t').append(fieldNames[i]);
+				line.append(':').append(fieldTypes[i]);
+				line.append(':').append(fieldLengths[i]);
+			}
+			return line.toString();
+		}
+
+		/**
+		 * Reads an entry back from one line of the index.
+		 */
+		private static Entry parse(String line)
+		{
+			String[] parts = line.split("\t");
+			Entry entry = new Entry();
+			entry.fileName = parts[0];
+			entry.fileLength = Long.parseLong(parts[1]);
+			entry.fileLastModified = Long.parseLong(parts[2]);
+			entry.numberOfRecords = Integer.parseInt(parts[3]);
+			entry.year = Integer.parseInt(parts[4]);
+			String[] date = parts[5].split("-");
+			entry.lastModifiedDate = new GregorianCalendar(	Integer.parseInt(date[0]),
+															Integer.parseInt(date[1]),
+															Integer.parseInt(date[2]));
+			int numFields = parts.length - 6;
+			entry.fieldNames = new String[numFields];
+			entry.fieldTypes = new DBFFieldType[numFields];
+			entry.fieldLengths = new int[numFields];
+			for (int i = 0; i < numFields; i++)
+			{
+				String[] field = parts[6 + i].split(":");
+				entry.fieldNames[i] = field[0];
+				entry.fieldTypes[i] = DBFFieldType.valueOf(field[1]);
+				entry.fieldLengths[i] = Integer.parseInt(field[2]);
+			}
+			return entry;
+		}
+	}
+}
@@ -0,0 +1,502 @@
+package dbf_data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Objects of this class store all the records of a .dbf table column by
+ * column rather than row by row. N fields are kept in long[] columns, with
+ * decimal numbers stored as their bits and marked in a bitmap, the same way
+ * DBFRecord keeps them, so whole numbers are never turned into doubles and
+ * lose precision. C fields are dictionary encoded into int[] codes, so
+ * repeated text like state abbreviations and party names is only stored
+ * once. Missing data is tracked in a bitmap per column.
+ * 
+ * This takes a fraction of the memory of a DBFTable and lets scans over
+ * a single column run over one primitive array. Row oriented DBFRecord views
+ * can still be made for code that needs them, but note that they are copies,
+ * so changing one won't change the store.
+ * 
+ * Records are kept in the order they were added, which for a store built
+ * from a DBFTable is key order and for one loaded with
+ * DBFFileIO.loadColumns is file order.
+ * 
+ * @author Aaron Meltzer
+ */
+public class DBFColumnStore
+{
+	// HOW MANY ROWS WE MAKE ROOM FOR TO START WITH
+	private static final int INITIAL_CAPACITY = 16;
+
+	// THE KINDS OF COLUMNS WE CAN HAVE
+	private static final byte NUMBER_COLUMN = 0;
+	private static final byte TEXT_COLUMN = 1;
+
+	// COLUMN HEADERS, SHARED WITH WHEREVER THEY CAME FROM
+	private ArrayList<DBFField> fields;
+
+	// ROW DATA
+	private Column[] columns;
+	private int numRecords;
+	private int capacity;
+
+	/**
+	 * This constructor sets up an empty store with columns for all the
+	 * fields in the header argument. Note that none of the header's
+	 * records are added.
+	 * 
+	 * @param header Table providing the fields.
+	 */
+	public DBFColumnStore(DBFTable header)
+	{
+		fields = new ArrayList<DBFField>();
+		columns = new Column[header.getNumFields()];
+		capacity = INITIAL_CAPACITY;
+		for (int i = 0; i < columns.length; i++)
+		{
+			DBFField field = header.getField(i);
+			fields.add(field);
+			columns[i] = new Column(field.getType() == DBFFieldType.C ? TEXT_COLUMN : NUMBER_COLUMN, capacity);
+		}
+	}
+
+	/**
+	 * This method makes a store containing all the fields and records in
+	 * the table argument, with the records in key order.
+	 * 
+	 * @param table Table whose data should be stored column by column.
+	 * 
+	 * @return A store containing a copy of all the table's data.
+	 */
+	public static DBFColumnStore fromTable(DBFTable table)
+	{
+		DBFColumnStore store = new DBFColumnStore(table);
+		Iterator<DBFRecord> it = table.recordsIterator();
+		while (it.hasNext())
+			store.addRecord(it.next());
+		return store;
+	}
+
+	// ACCESSOR METHODS
+	public DBFField				getField(int index)		{ return fields.get(index);		}
+	public int					getNumFields()			{ return fields.size();			}
+	public int					getNumRecords()			{ return numRecords;			}
+	public Iterator<DBFField>	fieldsIterator()		{ return fields.iterator();		}
+
+	/**
+	 * This accessor method gets the index of the column with a header
+	 * name equivalent to the testFieldName argument.
+	 * 
+	 * @param testFieldName The name of the field that we want the index of.
+	 * 
+	 * @return The index of the field, or -1 if there is no such field.
+	 */
+	public int getFieldIndex(String testFieldName)
+	{
+		for (int i = 0; i < fields.size(); i++)
+		{
+			if (fields.get(i).getName().equals(testFieldName))
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Tests to see if there is no data at a given location.
+	 * 
+	 * @param recordIndex Row of the data.
+	 * 
+	 * @param fieldIndex Column of the data.
+	 * 
+	 * @return true if there is no data there, false otherwise.
+	 */
+	public boolean isNull(int recordIndex, int fieldIndex)
+	{
+		checkRecordIndex(recordIndex);
+		return columns[fieldIndex].isNull(recordIndex);
+	}
+
+	/**
+	 * Accessor method for getting numeric data as a long. Note that
+	 * decimal numbers are truncated, and missing data is 0.
+	 * 
+	 * @param recordIndex Row of the data.
+	 * 
+	 * @param fieldIndex Column of the data, which must be an N field.
+	 * 
+	 * @return The data as a long.
+	 */
+	public long getLong(int recordIndex, int fieldIndex)
+	{
+		checkRecordIndex(recordIndex);
+		Column column = getNumberColumn(fieldIndex);
+		if (column.isDecimal(recordIndex))
+			return (long)Double.longBitsToDouble(column.longs[recordIndex]);
+		return column.longs[recordIndex];
+	}
+
+	/**
+	 * Accessor method for getting numeric data as a double. Note that
+	 * missing data is 0.
+	 * 
+	 * @param recordIndex Row of the data.
+	 * 
+	 * @param fieldIndex Column of the data, which must be an N field.
+	 * 
+	 * @return The data as a double.
+	 */
+	public double getDouble(int recordIndex, int fieldIndex)
+	{
+		checkRecordIndex(recordIndex);
+		Column column = getNumberColumn(fieldIndex);
+		if (column.isDecimal(recordIndex))
+			return Double.longBitsToDouble(column.longs[recordIndex]);
+		return column.longs[recordIndex];
+	}
+
+	/**
+	 * Accessor method for getting text data. Note that since text is
+	 * dictionary encoded, all rows with the same text share the same String.
+	 * 
+	 * @param recordIndex Row of the data.
+	 * 
+	 * @param fieldIndex Column of the data, which must be a C field.
+	 * 
+	 * @return The text, or null if there is none.
+	 */
+	public String getString(int recordIndex, int fieldIndex)
+	{
+		int code = getCode(recordIndex, fieldIndex);
+		if (code < 0)
+			return null;
+		return columns[fieldIndex].dictionary.get(code);
+	}
+
+	/**
+	 * Accessor method for getting the dictionary code of text data. Rows
+	 * with equal text always have equal codes, so comparing codes is a
+	 * cheap way of comparing text.
+	 * 
+	 * @param recordIndex Row of the data.
+	 * 
+	 * @param fieldIndex Column of the data, which must be a C field.
+	 * 
+	 * @return The code for the text, or -1 if there is no data.
+	 */
+	public int getCode(int recordIndex, int fieldIndex)
+	{
+		checkRecordIndex(recordIndex);
+		Column column = columns[fieldIndex];
+		if (column.kind != TEXT_COLUMN)
+			throw new IllegalArgumentException(fields.get(fieldIndex).getName() + " is not a C field");
+		if (column.isNull(recordIndex))
+			return -1;
+		return column.codes[recordIndex];
+	}
+
+	/**
+	 * Accessor method for getting the number of different pieces of
+	 * text in a C column.
+	 * 
+	 * @param fieldIndex Column, which must be a C field.
+	 * 
+	 * @return The number of different codes in the column.
+	 */
+	public int getDictionarySize(int fieldIndex)
+	{
+		Column column = columns[fieldIndex];
+		if (column.kind != TEXT_COLUMN)
+			throw new IllegalArgumentException(fields.get(fieldIndex).getName() + " is not a C field");
+		return column.dictionary.size();
+	}
+
+	/**
+	 * Accessor method for getting data the same way a DBFRecord provides it,
+	 * as a String, Long, or Double. Note that this boxes numeric data, so
+	 * the typed accessors should be preferred.
+	 * 
+	 * @param recordIndex Row of the data.
+	 * 
+	 * @param fieldIndex Column of the data.
+	 * 
+	 * @return The data, or null if there is none.
+	 */
+	public Object getData(int recordIndex, int fieldIndex)
+	{
+		if (isNull(recordIndex, fieldIndex))
+			return null;
+		Column column = columns[fieldIndex];
+		if (column.kind == TEXT_COLUMN)
+			return column.dictionary.get(column.codes[recordIndex]);
+		if (column.isDecimal(recordIndex))
+			return Double.valueOf(Double.longBitsToDouble(column.longs[recordIndex]));
+		return Long.valueOf(column.longs[recordIndex]);
+	}
+
+	/**
+	 * This method makes a row oriented copy of a record in the store.
+	 * 
+	 * @param recordIndex Row of the record.
+	 * 
+	 * @return A new record containing all of the row's data.
+	 */
+	public DBFRecord getRecord(int recordIndex)
+	{
+		checkRecordIndex(recordIndex);
+		DBFRecord record = new DBFRecord(columns.length);
+		for (int i = 0; i < columns.length; i++)
+		{
+			Column column = columns[i];
+			if (column.isNull(recordIndex))
+				continue;
+			if (column.kind == TEXT_COLUMN)
+				record.setString(column.dictionary.get(column.codes[recordIndex]), i);
+			else if (column.isDecimal(recordIndex))
+				record.setDouble(Double.longBitsToDouble(column.longs[recordIndex]), i);
+			else
+				record.setLong(column.longs[recordIndex], i);
+		}
+		return record;
+	}
+
+	/**
+	 * This method provides an iterator for going through row oriented
+	 * copies of all the records in the store.
+	 * 
+	 * @return An iterator over all the records, in store order.
+	 */
+	public Iterator<DBFRecord> recordsIterator()
+	{
+		return new Iterator<DBFRecord>()
+		{
+			private int nextIndex = 0;
+
+			public boolean hasNext()
+			{
+				return nextIndex < numRecords;
+			}
+
+			public DBFRecord next()
+			{
+				if (!hasNext())
+					throw new NoSuchElementException();
+				return getRecord(nextIndex++);
+			}
+
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * This method adds a copy of the record argument's data to the end
+	 * of the store. Note that the record itself is not kept, so it may
+	 * be reused for the next record.
+	 * 
+	 * @param record Record whose data should be added.
+	 * 
+	 * @throws IllegalArgumentException Thrown when an N field's data
+	 * isn't a number.
+	 */
+	public void addRecord(DBFRecord record)
+	{
+		// MAKE ROOM IF WE'VE RUN OUT
+		if (numRecords == capacity)
+		{
+			capacity *= 2;
+			for (int i = 0; i < columns.length; i++)
+				columns[i].grow(capacity);
+		}
+
+		// AND ADD THE DATA TO EACH COLUMN, WITHOUT BOXING NUMBERS
+		for (int i = 0; i < columns.length; i++)
+		{
+			Column column = columns[i];
+			byte kind = record.getKind(i);
+			if (kind == DBFRecord.NO_DATA)
+				column.setNull(numRecords);
+			else if (column.kind == TEXT_COLUMN)
+				column.setText(numRecords, record.getString(i));
+			else if (kind == DBFRecord.LONG_DATA)
+				column.setLong(numRecords, record.getLong(i));
+			else if (kind == DBFRecord.DOUBLE_DATA)
+				column.setDouble(numRecords, record.getDouble(i));
+			else
+				throw new IllegalArgumentException(fields.get(i).getName() + " data is not a number: " + record.getData(i));
+		}
+		numRecords++;
+	}
+
+	/**
+	 * This helper method gets the column at fieldIndex, making sure it's numeric.
+	 */
+	private Column getNumberColumn(int fieldIndex)
+	{
+		Column column = columns[fieldIndex];
+		if (column.kind != NUMBER_COLUMN)
+			throw new IllegalArgumentException(fields.get(fieldIndex).getName() + " is not an N field");
+		return column;
+	}
+
+	/**
+	 * This helper method makes sure the recordIndex argument refers
+	 * to a record in the store.
+	 * 
+	 * @param recordIndex Index to check.
+	 */
+	private void checkRecordIndex(int recordIndex)
+	{
+		if ((recordIndex < 0) || (recordIndex >= numRecords))
+			throw new IndexOutOfBoundsException("Record " + recordIndex + " of " + numRecords);
+	}
+
+	/**
+	 * This helper class stores the data for a single column. Only the
+	 * arrays for the kind of column it is are used.
+	 */
+	private static class Column
+	{
+		private byte kind;
+		private long[] longs;
+		private int[] codes;
+		private long[] nulls;
+
+		// IN A NUMBER COLUMN, MARKS THE ROWS WHOSE longs ARE THE BITS OF A
+		// DOUBLE. THIS ISN'T MADE UNTIL THE FIRST DECIMAL NUMBER SHOWS UP
+		private long[] decimals;
+
+		// FOR DICTIONARY ENCODING TEXT
+		private ArrayList<String> dictionary;
+		private HashMap<String,Integer> codesByText;
+
+		/**
+		 * This constructor makes an empty column.
+		 * 
+		 * @param initKind What kind of data the column will store.
+		 * 
+		 * @param capacity How many rows to make room for.
+		 */
+		public Column(byte initKind, int capacity)
+		{
+			kind = initKind;
+			nulls = new long[(capacity + 63) / 64];
+			if (kind == TEXT_COLUMN)
+			{
+				codes = new int[capacity];
+				dictionary = new ArrayList<String>();
+				codesByText = new HashMap<String,Integer>();
+			}
+			else
+				longs = new long[capacity];
+		}
+
+		/**
+		 * Tests the null bitmap for a row.
+		 * 
+		 * @param row Row to test.
+		 * 
+		 * @return true if the row has no data in this column.
+		 */
+		public boolean isNull(int row)
+		{
+			return (nulls[row >>> 6] & (1L << row)) != 0;
+		}
+
+		/**
+		 * Tests to see if a row of a number column holds a decimal number.
+		 * 
+		 * @param row Row to test.
+		 * 
+		 * @return true if the row's longs entry is the bits of a double.
+		 */
+		public boolean isDecimal(int row)
+		{
+			return (decimals != null) && ((decimals[row >>> 6] & (1L << row)) != 0);
+		}
+
+		/**
+		 * This method makes room for more rows.
+		 * 
+		 * @param capacity The new number of rows to make room for.
+		 */
+		public void grow(int capacity)
+		{
+			nulls = Arrays.copyOf(nulls, (capacity + 63) / 64);
+			if (kind == TEXT_COLUMN)
+				codes = Arrays.copyOf(codes, capacity);
+			else
+			{
+				longs = Arrays.copyOf(longs, capacity);
+				if (decimals != null)
+					decimals = Arrays.copyOf(decimals, nulls.length);
+			}
+		}
+
+		/**
+		 * This method marks a row as having no data.
+		 * 
+		 * @param row Row with no data.
+		 */
+		public void setNull(int row)
+		{
+			nulls[row >>> 6] |= (1L << row);
+		}
+
+		/**
+		 * This method stores a whole number in a number column.
+		 * 
+		 * @param row Row for the data.
+		 * 
+		 * @param data The number.
+		 */
+		public void setLong(int row, long data)
+		{
+			nulls[row >>> 6] &= ~(1L << row);
+			if (decimals != null)
+				decimals[row >>> 6] &= ~(1L << row);
+			longs[row] = data;
+		}
+
+		/**
+		 * This method stores a decimal number in a number column.
+		 * 
+		 * @param row Row for the data.
+		 * 
+		 * @param data The number.
+		 */
+		public void setDouble(int row, double data)
+		{
+			nulls[row >>> 6] &= ~(1L << row);
+			if (decimals == null)
+				decimals = new long[nulls.length];
+			decimals[row >>> 6] |= (1L << row);
+			longs[row] = Double.doubleToRawLongBits(data);
+		}
+
+		/**
+		 * This method stores text in a text column, adding it to the
+		 * dictionary if it's new.
+		 * 
+		 * @param row Row for the data.
+		 * 
+		 * @param text The text.
+		 */
+		public void setText(int row, String text)
+		{
+			nulls[row >>> 6] &= ~(1L << row);
+			Integer code = codesByText.get(text);
+			if (code == null)
+			{
+				code = dictionary.size();
+				dictionary.add(text);
+				codesByText.put(text, code);
+			}
+			codes[row] = code;
+		}
+	}
+}
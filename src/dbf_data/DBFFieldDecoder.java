@@ -0,0 +1,521 @@
+package dbf_data;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * This class decodes the data for a single field straight out of the raw
+ * bytes of a .dbf file. Numbers are parsed digit by digit into a long or
+ * a double and text is trimmed by moving offsets, so the only thing ever
+ * made is the String for C data. Anything the fast paths don't understand
+ * is handed to Long.parseLong or Double.parseDouble so that the results,
+ * and the exceptions, are exactly what they would be for the trimmed text.
+ * 
+ * Each method also comes in a version that reads from a ByteBuffer, such
+ * as a memory mapped file, using only absolute gets. Those leave the
+ * buffer's position alone, so many threads may share one buffer.
+ * 
+ * @author Aaron Meltzer
+ */
+public class DBFFieldDecoder
+{
+	// TEXT IS STORED ONE BYTE PER CHARACTER
+	static final Charset CHARSET = Charset.forName("ISO-8859-1");
+
+	// A DOUBLE CAN HOLD ANY WHOLE NUMBER WITH THIS MANY DIGITS EXACTLY
+	private static final int MAX_EXACT_DIGITS = 15;
+
+	// AND ALL OF THESE POWERS OF TEN EXACTLY
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+		1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	/**
+	 * This class only has static methods.
+	 */
+	private DBFFieldDecoder()
+	{
+	}
+
+	/**
+	 * This method finds the first byte in a field that String.trim would keep.
+	 * 
+	 * @param bytes Raw .dbf data containing the field.
+	 * 
+	 * @param offset Index of the first byte of the field.
+	 * 
+	 * @param length Number of bytes in the field.
+	 * 
+	 * @return Index of the first byte that isn't blank, or offset + length
+	 * if they all are.
+	 */
+	public static int trimStart(byte[] bytes, int offset, int length)
+	{
+		int end = offset + length;
+		while ((offset < end) && ((bytes[offset] & 0xff) <= ' '))
+			offset++;
+		return offset;
+	}
+
+	/**
+	 * This method finds the end of a field once String.trim would be done with it.
+	 * 
+	 * @param bytes Raw .dbf data containing the field.
+	 * 
+	 * @param start Index of the first byte to keep, as found by trimStart.
+	 * 
+	 * @param end Index just past the last byte of the field.
+	 * 
+	 * @return Index just past the last byte that isn't blank.
+	 */
+	public static int trimEnd(byte[] bytes, int start, int end)
+	{
+		while ((end > start) && ((bytes[end - 1] & 0xff) <= ' '))
+			end--;
+		return end;
+	}
+
+	/**
+	 * This method decodes the trimmed text of a field, making only the
+	 * String that is returned.
+	 * 
+	 * @param bytes Raw .dbf data containing the field.
+	 * 
+	 * @param offset Index of the first byte of the field.
+	 * 
+	 * @param length Number of bytes in the field.
+	 * 
+	 * @return The trimmed text.
+	 */
+	public static String decodeString(byte[] bytes, int offset, int length)
+	{
+		int start = trimStart(bytes, offset, length);
+		int end = trimEnd(bytes, start, offset + length);
+		if (start == end)
+			return "";
+		return new String(bytes, start, end - start, CHARSET);
+	}
+
+	/**
+	 * This method tests to see if a numeric field is a decimal number, which
+	 * is how the loader decides between making a Double and making a Long.
+	 * 
+	 * @param bytes Raw .dbf data containing the field.
+	 * 
+	 * @param offset Index of the first byte of the field.
+	 * 
+	 * @param length Number of bytes in the field.
+	 * 
+	 * @return true if the field contains a decimal point, false otherwise.
+	 */
+	public static boolean isDecimal(byte[] bytes, int offset, int length)
+	{
+		for (int i = offset; i < offset + length; i++)
+		{
+			if (bytes[i] == '.')
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * This method parses a whole number straight out of a field.
+	 * 
+	 * @param bytes Raw .dbf data containing the field.
+	 * 
+	 * @param offset Index of the first byte of the field.
+	 * 
+	 * @param length Number of bytes in the field.
+	 * 
+	 * @return The number, or 0 if the field is blank.
+	 * 
+	 * @throws NumberFormatException Thrown when the field isn't a whole
+	 * number that fits in a long.
+	 */
+	public static long parseLong(byte[] bytes, int offset, int length)
+	{
+		int start = trimStart(bytes, offset, length);
+		int end = trimEnd(bytes, start, offset + length);
+		if (start == end)
+			return 0;
+
+		// SIGN
+		int i = start;
+		boolean negative = false;
+		if ((bytes[i] == '-') || (bytes[i] == '+'))
+		{
+			negative = bytes[i] == '-';
+			i++;
+		}
+
+		// DIGITS, WHICH WE ACCUMULATE AS A NEGATIVE NUMBER SO
+		// THAT Long.MIN_VALUE DOESN'T OVERFLOW
+		if ((i == end) || ((end - i) > 18))
+			return slowParseLong(bytes, start, end);
+		long num = 0;
+		for (; i < end; i++)
+		{
+			int digit = bytes[i] - '0';
+			if ((digit < 0) || (digit > 9))
+				return slowParseLong(bytes, start, end);
+			num = (num * 10) - digit;
+		}
+		return negative ? num : -num;
+	}
+
+	/**
+	 * This method parses a decimal number straight out of a field. Note that
+	 * numbers with up to 15 digits are parsed exactly, as Double.parseDouble
+	 * would, and longer ones are handed to Double.parseDouble.
+	 * 
+	 * @param bytes Raw .dbf data containing the field.
+	 * 
+	 * @param offset Index of the first byte of the field.
+	 * 
+	 * @param length Number of bytes in the field.
+	 * 
+	 * @return The number, or 0 if the field is blank.
+	 * 
+	 * @throws NumberFormatException Thrown when the field isn't a number.
+	 */
+	public static double parseDouble(byte[] bytes, int offset, int length)
+	{
+		int start = trimStart(bytes, offset, length);
+		int end = trimEnd(bytes, start, offset + length);
+		if (start == end)
+			return 0;
+
+		// SIGN
+		int i = start;
+		boolean negative = false;
+		if ((bytes[i] == '-') || (bytes[i] == '+'))
+		{
+			negative = bytes[i] == '-';
+			i++;
+		}
+
+		// DIGITS, WITH AT MOST ONE DECIMAL POINT
+		long mantissa = 0;
+		int numDigits = 0;
+		int decimalDigits = 0;
+		boolean decimal = false;
+		boolean anyDigits = false;
+		for (; i < end; i++)
+		{
+			byte b = bytes[i];
+			if ((b >= '0') && (b <= '9'))
+			{
+				// LEADING ZEROES DON'T COUNT AGAINST OUR PRECISION
+				anyDigits = true;
+				if ((mantissa != 0) || (b != '0'))
+					numDigits++;
+				mantissa = (mantissa * 10) + (b - '0');
+				if (decimal)
+					decimalDigits++;
+				if ((numDigits > MAX_EXACT_DIGITS) || (decimalDigits >= POWERS_OF_TEN.length))
+					return slowParseDouble(bytes, start, end);
+			}
+			else if ((b == '.') && !decimal)
+				decimal = true;
+			else
+				return slowParseDouble(bytes, start, end);
+		}
+
+		// THERE HAS TO BE AT LEAST ONE DIGIT SOMEWHERE
+		if (!anyDigits)
+			return slowParseDouble(bytes, start, end);
+
+		// BOTH OF THESE ARE EXACT, SO THE DIVISION IS CORRECTLY ROUNDED
+		double num = mantissa / POWERS_OF_TEN[decimalDigits];
+		return negative ? -num : num;
+	}
+
+	/**
+	 * This method decodes the data for a numeric field the way the loader
+	 * always has, as a Double if it has a decimal point and a Long otherwise.
+	 * 
+	 * @param bytes Raw .dbf data containing the field.
+	 * 
+	 * @param offset Index of the first byte of the field.
+	 * 
+	 * @param length Number of bytes in the field.
+	 * 
+	 * @return The decoded Long or Double.
+	 */
+	public static Object decodeNumber(byte[] bytes, int offset, int length)
+	{
+		if (isDecimal(bytes, offset, length))
+			return parseDouble(bytes, offset, length);
+		return parseLong(bytes, offset, length);
+	}
+
+	/**
+	 * This method decodes the data for one field into a record, keeping
+	 * numbers unboxed. C fields are decoded as text, and N fields as a
+	 * double if they have a decimal point and a long otherwise.
+	 * 
+	 * @param bytes Raw .dbf data containing the field.
+	 * 
+	 * @param offset Index of the first byte of the field.
+	 * 
+	 * @param field The field being decoded, which provides the type and length.
+	 * 
+	 * @param record The record to put the data in.
+	 * 
+	 * @param fieldIndex Index of the field inside the record.
+	 */
+	public static void decodeField(byte[] bytes, int offset, DBFField field, DBFRecord record, int fieldIndex)
+	{
+		int length = field.getLength();
+		if (field.getType() == DBFFieldType.C)
+			record.setString(decodeString(bytes, offset, length), fieldIndex);
+		else if (isDecimal(bytes, offset, length))
+			record.setDouble(parseDouble(bytes, offset, length), fieldIndex);
+		else
+			record.setLong(parseLong(bytes, offset, length), fieldIndex);
+	}
+
+	/**
+	 * This method finds the first byte in a field that String.trim would
+	 * keep, like trimStart for an array.
+	 * 
+	 * @param buffer Raw .dbf data containing the field.
+	 * 
+	 * @param offset Index of the first byte of the field.
+	 * 
+	 * @param length Number of bytes in the field.
+	 * 
+	 * @return Index of the first byte that isn't blank, or offset + length
+	 * if they all are.
+	 */
+	public static int trimStart(ByteBuffer buffer, int offset, int length)
+	{
+		int end = offset + length;
+		while ((offset < end) && ((buffer.get(offset) & 0xff) <= ' '))
+			offset++;
+		return offset;
+	}
+
+	/**
+	 * This method finds the end of a field once String.trim would be done
+	 * with it, like trimEnd for an array.
+	 * 
+	 * @param buffer Raw .dbf data containing the field.
+	 * 
+	 * @param start Index of the first byte to keep, as found by trimStart.
+	 * 
+	 * @param end Index just past the last byte of the field.
+	 * 
+	 * @return Index just past the last byte that isn't blank.
+	 */
+	public static int trimEnd(ByteBuffer buffer, int start, int end)
+	{
+		while ((end > start) && ((buffer.get(end - 1) & 0xff) <= ' '))
+			end--;
+		return end;
+	}
+
+	/**
+	 * This method decodes the trimmed text of a field, like decodeString
+	 * for an array. Only the trimmed bytes are copied out of the buffer.
+	 * 
+	 * @param buffer Raw .dbf data containing the field.
+	 * 
+	 * @param offset Index of the first byte of the field.
+	 * 
+	 * @param length Number of bytes in the field.
+	 * 
+	 * @return The trimmed text.
+	 */
+	public static String decodeString(ByteBuffer buffer, int offset, int length)
+	{
+		int start = trimStart(buffer, offset, length);
+		int end = trimEnd(buffer, start, offset + length);
+		if (start == end)
+			return "";
+		return new String(copy(buffer, start, end), CHARSET);
+	}
+
+	/**
+	 * This method tests to see if a numeric field is a decimal number, like
+	 * isDecimal for an array.
+	 * 
+	 * @param buffer Raw .dbf data containing the field.
+	 * 
+	 * @param offset Index of the first byte of the field.
+	 * 
+	 * @param length Number of bytes in the field.
+	 * 
+	 * @return true if the field contains a decimal point, false otherwise.
+	 */
+	public static boolean isDecimal(ByteBuffer buffer, int offset, int length)
+	{
+		for (int i = offset; i < offset + length; i++)
+		{
+			if (buffer.get(i) == '.')
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * This method parses a whole number straight out of a field, like
+	 * parseLong for an array.
+	 * 
+	 * @param buffer Raw .dbf data containing the field.
+	 * 
+	 * @param offset Index of the first byte of the field.
+	 * 
+	 * @param length Number of bytes in the field.
+	 * 
+	 * @return The number, or 0 if the field is blank.
+	 * 
+	 * @throws NumberFormatException Thrown when the field isn't a whole
+	 * number that fits in a long.
+	 */
+	public static long parseLong(ByteBuffer buffer, int offset, int length)
+	{
+		int start = trimStart(buffer, offset, length);
+		int end = trimEnd(buffer, start, offset + length);
+		if (start == end)
+			return 0;
+
+		// SIGN
+		int i = start;
+		boolean negative = false;
+		if ((buffer.get(i) == '-') || (buffer.get(i) == '+'))
+		{
+			negative = buffer.get(i) == '-';
+			i++;
+		}
+
+		// DIGITS, ACCUMULATED AS A NEGATIVE NUMBER LIKE FOR AN ARRAY
+		if ((i == end) || ((end - i) > 18))
+			return Long.parseLong(new String(copy(buffer, start, end), CHARSET));
+		long num = 0;
+		for (; i < end; i++)
+		{
+			int digit = buffer.get(i) - '0';
+			if ((digit < 0) || (digit > 9))
+				return Long.parseLong(new String(copy(buffer, start, end), CHARSET));
+			num = (num * 10) - digit;
+		}
+		return negative ? num : -num;
+	}
+
+	/**
+	 * This method parses a decimal number straight out of a field, like
+	 * parseDouble for an array.
+	 * 
+	 * @param buffer Raw .dbf data containing the field.
+	 * 
+	 * @param offset Index of the first byte of the field.
+	 * 
+	 * @param length Number of bytes in the field.
+	 * 
+	 * @return The number, or 0 if the field is blank.
+	 * 
+	 * @throws NumberFormatException Thrown when the field isn't a number.
+	 */
+	public static double parseDouble(ByteBuffer buffer, int offset, int length)
+	{
+		int start = trimStart(buffer, offset, length);
+		int end = trimEnd(buffer, start, offset + length);
+		if (start == end)
+			return 0;
+
+		// ANYTHING THAT ISN'T A SIMPLE NUMBER GOES THE SLOW WAY
+		int i = start;
+		boolean negative = false;
+		if ((buffer.get(i) == '-') || (buffer.get(i) == '+'))
+		{
+			negative = buffer.get(i) == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int numDigits = 0;
+		int decimalDigits = 0;
+		boolean decimal = false;
+		boolean anyDigits = false;
+		for (; i < end; i++)
+		{
+			byte b = buffer.get(i);
+			if ((b >= '0') && (b <= '9'))
+			{
+				anyDigits = true;
+				if ((mantissa != 0) || (b != '0'))
+					numDigits++;
+				mantissa = (mantissa * 10) + (b - '0');
+				if (decimal)
+					decimalDigits++;
+				if ((numDigits > MAX_EXACT_DIGITS) || (decimalDigits >= POWERS_OF_TEN.length))
+					return Double.parseDouble(new String(copy(buffer, start, end), CHARSET));
+			}
+			else if ((b == '.') && !decimal)
+				decimal = true;
+			else
+				return Double.parseDouble(new String(copy(buffer, start, end), CHARSET));
+		}
+		if (!anyDigits)
+			return Double.parseDouble(new String(copy(buffer, start, end), CHARSET));
+
+		double num = mantissa / POWERS_OF_TEN[decimalDigits];
+		return negative ? -num : num;
+	}
+
+	/**
+	 * This method decodes the data for one field into a record, like
+	 * decodeField for an array.
+	 * 
+	 * @param buffer Raw .dbf data containing the field.
+	 * 
+	 * @param offset Index of the first byte of the field.
+	 * 
+	 * @param field The field being decoded, which provides the type and length.
+	 * 
+	 * @param record The record to put the data in.
+	 * 
+	 * @param fieldIndex Index of the field inside the record.
+	 */
+	public static void decodeField(ByteBuffer buffer, int offset, DBFField field, DBFRecord record, int fieldIndex)
+	{
+		int length = field.getLength();
+		if (field.getType() == DBFFieldType.C)
+			record.setString(decodeString(buffer, offset, length), fieldIndex);
+		else if (isDecimal(buffer, offset, length))
+			record.setDouble(parseDouble(buffer, offset, length), fieldIndex);
+		else
+			record.setLong(parseLong(buffer, offset, length), fieldIndex);
+	}
+
+	/**
+	 * This helper method copies the bytes from start to end out of the buffer
+	 * in bulk. It reads through a duplicate, so the buffer's own position
+	 * is never moved.
+	 */
+	private static byte[] copy(ByteBuffer buffer, int start, int end)
+	{
+		byte[] bytes = new byte[end - start];
+		ByteBuffer view = buffer.duplicate();
+		view.position(start);
+		view.get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Falls back on Long.parseLong for anything the fast path can't handle.
+	 */
+	private static long slowParseLong(byte[] bytes, int start, int end)
+	{
+		return Long.parseLong(new String(bytes, start, end - start, CHARSET));
+	}
+
+	/**
+	 * Falls back on Double.parseDouble for anything the fast path can't handle.
+	 */
+	private static double slowParseDouble(byte[] bytes, int start, int end)
+	{
+		return Double.parseDouble(new String(bytes, start, end - start, CHARSET));
+	}
+}
@@ -0,0 +1,80 @@
+package dbf_data;
+
+import java.util.Arrays;
+
+/**
+ * Objects of this class say where each field's data is kept inside the
+ * records of a table. All the records of a table share one layout, so
+ * adding or removing a field only changes the layout, never the records.
+ * 
+ * Each field is given a slot the first time it's added, and slots are
+ * never handed out twice. A record made before a field was added simply
+ * has no room for that slot yet, which reads as no data, and it only
+ * makes room the first time that field is set. Removing a field just
+ * forgets its slot, so note that the data that was in it isn't freed
+ * until the records are loaded again.
+ * 
+ * @author Aaron Meltzer
+ */
+class DBFFieldLayout
+{
+	// THE SLOT FOR EACH FIELD, IN FIELD ORDER
+	private int[] slots;
+
+	// HOW MANY SLOTS HAVE EVER BEEN HANDED OUT
+	private int numSlots;
+
+	/**
+	 * This constructor sets up a layout where each field is in the slot
+	 * with the same index.
+	 * 
+	 * @param numFields Number of fields to start with.
+	 */
+	DBFFieldLayout(int numFields)
+	{
+		slots = new int[numFields];
+		for (int i = 0; i < numFields; i++)
+			slots[i] = i;
+		numSlots = numFields;
+	}
+
+	/**
+	 * This constructor makes a copy of the layout argument, which can
+	 * then be changed without changing the original.
+	 * 
+	 * @param layout The layout to copy.
+	 */
+	DBFFieldLayout(DBFFieldLayout layout)
+	{
+		slots = layout.slots.clone();
+		numSlots = layout.numSlots;
+	}
+
+	// ACCESSOR METHODS
+	int		getNumFields()				{ return slots.length;		}
+	int		getNumSlots()				{ return numSlots;			}
+	int		getSlot(int fieldIndex)		{ return slots[fieldIndex];	}
+
+	/**
+	 * This method adds a field to the end of the layout, in a new slot.
+	 */
+	void addField()
+	{
+		slots = Arrays.copyOf(slots, slots.length + 1);
+		slots[slots.length - 1] = numSlots++;
+	}
+
+	/**
+	 * This method removes the field at fieldIndex from the layout. Its
+	 * slot is never used again.
+	 * 
+	 * @param fieldIndex Index of the field to remove.
+	 */
+	void removeField(int fieldIndex)
+	{
+		int[] updatedSlots = new int[slots.length - 1];
+		System.arraycopy(slots, 0, updatedSlots, 0, fieldIndex);
+		System.arraycopy(slots, fieldIndex + 1, updatedSlots, fieldIndex, updatedSlots.length - fieldIndex);
+		slots = updatedSlots;
+	}
+}
@@ -0,0 +1,141 @@
+package dbf_data;
+
+/**
+ * Objects of this class are references to a field of a DBFTable that have
+ * already been looked up by name. Code that needs the same field from every
+ * record in a table should get one of these with DBFTable.getFieldRef before
+ * the loop and use it inside, which costs an array access per record rather
+ * than a search through the field names.
+ * 
+ * A reference notices when fields are added to or removed from its table and
+ * finds its field again the next time it's used.
+ * 
+ * @author Aaron Meltzer
+ */
+public class DBFFieldRef
+{
+	// THE TABLE AND FIELD WE REFER TO
+	private DBFTable table;
+	private String fieldName;
+
+	// WHERE THE FIELD WAS THE LAST TIME WE LOOKED
+	private int fieldIndex;
+	private int fieldsVersion;
+
+	/**
+	 * This constructor looks up the field with the initFieldName argument.
+	 * Use DBFTable.getFieldRef to make one of these.
+	 * 
+	 * @param initTable The table containing the field.
+	 * 
+	 * @param initFieldName The name of the field.
+	 * 
+	 * @throws IllegalArgumentException Thrown when there is no such field.
+	 */
+	DBFFieldRef(DBFTable initTable, String initFieldName)
+	{
+		table = initTable;
+		fieldName = initFieldName;
+		resolve();
+	}
+
+	// ACCESSOR METHODS
+	public DBFTable	getTable()		{ return table;					}
+	public String	getName()		{ return fieldName;				}
+	public DBFField	getField()		{ return table.getField(getIndex());	}
+
+	/**
+	 * Accessor method for getting where the field is in the table's records.
+	 * 
+	 * @return The index of the field.
+	 * 
+	 * @throws IllegalArgumentException Thrown when the field has been removed
+	 * from the table.
+	 */
+	public int getIndex()
+	{
+		if (fieldsVersion != table.getFieldsVersion())
+			resolve();
+		return fieldIndex;
+	}
+
+	/**
+	 * Accessor method for getting this field's data from the record argument.
+	 * 
+	 * @param record A record of the table.
+	 * 
+	 * @return The data, a String, Long, or Double, or null if there is none.
+	 */
+	public Object getData(DBFRecord record)
+	{
+		return record.getData(getIndex());
+	}
+
+	/**
+	 * Accessor method for getting this field's data from the record argument
+	 * as text.
+	 * 
+	 * @param record A record of the table.
+	 * 
+	 * @return The data as text, or null if there is none.
+	 */
+	public String getString(DBFRecord record)
+	{
+		return record.getString(getIndex());
+	}
+
+	/**
+	 * Accessor method for getting this field's data from the record argument
+	 * as a whole number. Decimal numbers are truncated.
+	 * 
+	 * @param record A record of the table.
+	 * 
+	 * @return The number, or 0 if there is none.
+	 * 
+	 * @throws ClassCastException Thrown when the data isn't a number.
+	 */
+	public long getLong(DBFRecord record)
+	{
+		return record.getLong(getIndex());
+	}
+
+	/**
+	 * Accessor method for getting this field's data from the record argument
+	 * as a decimal number.
+	 * 
+	 * @param record A record of the table.
+	 * 
+	 * @return The number, or 0 if there is none.
+	 * 
+	 * @throws ClassCastException Thrown when the data isn't a number.
+	 */
+	public double getDouble(DBFRecord record)
+	{
+		return record.getDouble(getIndex());
+	}
+
+	/**
+	 * Mutator method for setting this field's data in the record argument.
+	 * 
+	 * @param record A record of the table.
+	 * 
+	 * @param data The new data, a String, Long, or Double.
+	 */
+	public void setData(DBFRecord record, Object data)
+	{
+		record.setData(data, getIndex());
+	}
+
+	/**
+	 * This helper method looks the field up by name in the table.
+	 */
+	private void resolve()
+	{
+		int version = table.getFieldsVersion();
+		int index = table.getFieldIndex(fieldName);
+		if (index < 0)
+			throw new IllegalArgumentException("No field named " + fieldName);
+		fieldIndex = index;
+		fieldsVersion = version;
+	}
+}
@@ -1,13 +1,28 @@
 package dbf_data;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 /**
  * This class may be used for reading and writing data to and from
  * a .dbf file. Note that both processes must assume a similar DBF format.
@@ -17,10 +32,31 @@ import java.util.Iterator;
 
 public class DBFFileIO
 {
+	// THE HEADER AND EACH FIELD DESCRIPTOR ARE ALWAYS 32 BYTES
+	private static final int HEADER_LENGTH = 32;
+	private static final int FIELD_DESCRIPTOR_LENGTH = 32;
+
+	// TEXT IS STORED ONE BYTE PER CHARACTER
+	private static final Charset CHARSET = Charset.forName("ISO-8859-1");
+
+	// HOW MANY BYTES WE SAVE TO THE FILE AT ONCE
+	private static final int SAVE_BLOCK_SIZE = 1 << 20;
+
+	// dBASE MARKS THE END OF THE RECORDS WITH THIS
+	private static final byte END_OF_FILE = 0x1A;
+
 	/**
 	 * This method saves the tableToSave argument to the file location. Note
 	 * that we are only writing C and N data types.
-
+	 * 
+	 * Everything is put into one large buffer, a record at a time, and the
+	 * buffer is handed to a FileChannel whenever it fills up, so saving costs
+	 * a handful of big writes rather than one per byte. Nothing is shared
+	 * between calls, so tables may be saved from background threads, as long
+	 * as nobody changes a table while it is being saved. Note that the file
+	 * is written over in place, use saveDBFAtomically if a crash part way
+	 * through must not leave a broken file behind.
+	 * 
 	 * @param tableToSave DBFTable data to save to the file.
 	 * 
 	 * @param file File location to save the table.
@@ -30,217 +66,362 @@ public class DBFFileIO
 	 */
 	public void saveDBF(DBFTable tableToSave, File file) throws IOException
 	{
-		// WE ARE GOING TO WRITE RAW BYTE DATA
-		FileOutputStream fos = new FileOutputStream(file);
-		DataOutputStream dos = new DataOutputStream(fos);
+		// WE ARE GOING TO WRITE RAW BYTE DATA IN LARGE BLOCKS
+		FileChannel channel = new FileOutputStream(file).getChannel();
+		try
+		{
+			saveTable(channel, tableToSave);
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+
+	/**
+	 * This method saves the tableToSave argument to the file location such
+	 * that, even if the program or the machine dies part way through, the
+	 * file is left holding either the old table or the new one, never a
+	 * mix of the two. The table is written to a temp file next to the file,
+	 * forced to disk, and then renamed over the file in one atomic step.
+	 * 
+	 * @param tableToSave DBFTable data to save to the file.
+	 * 
+	 * @param file File location to save the table.
+	 * 
+	 * @throws IOException Thrown when writing fails, in which case the
+	 * file is left as it was.
+	 */
+	public void saveDBFAtomically(DBFTable tableToSave, File file) throws IOException
+	{
+		saveDBFsAtomically(new DBFTable[] { tableToSave }, new File[] { file });
+	}
+
+	/**
+	 * This method saves several tables at once, as with saveDBFAtomically,
+	 * but shares the cost of syncing among them. All the temp files are
+	 * written first, then they are all forced to disk together, and only
+	 * then are they renamed over their files. Each file is replaced
+	 * atomically, and none of them are replaced unless all of the temp
+	 * files were written and forced successfully.
+	 * 
+	 * @param tablesToSave DBFTable data to save.
+	 * 
+	 * @param files File location to save each table, in the same order.
+	 * 
+	 * @throws IOException Thrown when writing fails, in which case the
+	 * files are left as they were if none of them had been renamed yet.
+	 */
+	public void saveDBFsAtomically(DBFTable[] tablesToSave, File[] files) throws IOException
+	{
+		if (tablesToSave.length != files.length)
+			throw new IllegalArgumentException(tablesToSave.length + " tables but " + files.length + " files");
+
+		File[] tempFiles = new File[files.length];
+		FileChannel[] channels = new FileChannel[files.length];
+		boolean renamed = false;
+		try
+		{
+			// WRITE ALL THE TEMP FILES
+			for (int i = 0; i < files.length; i++)
+			{
+				File dir = files[i].getAbsoluteFile().getParentFile();
+				tempFiles[i] = File.createTempFile("~" + files[i].getName() + ".", ".tmp", dir);
+				channels[i] = new FileOutputStream(tempFiles[i]).getChannel();
+				saveTable(channels[i], tablesToSave[i]);
+			}
+
+			// ONE BARRIER FOR ALL OF THEM
+			for (int i = 0; i < channels.length; i++)
+			{
+				channels[i].force(true);
+				channels[i].close();
+			}
+
+			// AND NOW SWAP THEM IN
+			renamed = true;
+			for (int i = 0; i < files.length; i++)
+			{
+				Files.move(	tempFiles[i].toPath(),
+							files[i].toPath(),
+							StandardCopyOption.ATOMIC_MOVE,
+							StandardCopyOption.REPLACE_EXISTING);
+			}
+
+			// MAKE THE RENAMES THEMSELVES DURABLE, ONCE PER DIRECTORY
+			HashSet<File> dirs = new HashSet<File>();
+			for (int i = 0; i < files.length; i++)
+				dirs.add(files[i].getAbsoluteFile().getParentFile());
+			Iterator<File> dirsIt = dirs.iterator();
+			while (dirsIt.hasNext())
+				forceDirectory(dirsIt.next());
+		}
+		finally
+		{
+			// CLEAN UP WHATEVER WASN'T SWAPPED IN
+			for (int i = 0; i < files.length; i++)
+			{
+				if (channels[i] != null)
+					channels[i].close();
+				if ((tempFiles[i] != null) && (!renamed || tempFiles[i].exists()))
+					tempFiles[i].delete();
+			}
+		}
+	}
+
+	/**
+	 * This helper method writes the whole tableToSave argument through the
+	 * channel argument. Everything is put into one large buffer, a record
+	 * at a time, and the buffer is handed to the channel whenever it fills
+	 * up, so saving costs a handful of big writes rather than one per byte.
+	 * 
+	 * @param channel Channel writing to the start of the .dbf file.
+	 * 
+	 * @param tableToSave DBFTable data to save.
+	 * 
+	 * @throws IOException Thrown when the channel fails.
+	 */
+	private void saveTable(FileChannel channel, DBFTable tableToSave) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(SAVE_BLOCK_SIZE);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
 
 		// SAVE THE FIRST 32 BYTES OF THE HEADER
-		saveHeader(dos, tableToSave);
+		saveHeader(buffer, tableToSave);
 
 		// SUBRECORDS (32-(positionOfFirstDataRecorded-3))
-		saveFields(dos, tableToSave);
+		saveFields(channel, buffer, tableToSave);
 
 		// HEADER RECORD TERMINATOR (SHOULD BE 0x0D)
-		dos.writeByte(tableToSave.getTerminator());
+		buffer.put(tableToSave.getTerminator());
 
 		// AND NOW SAVE THE ACTUAL DATA
-		saveRecords(dos, tableToSave);	
+		saveRecords(channel, buffer, tableToSave);
+
+		// END OF FILE MARKER
+		if (!buffer.hasRemaining())
+			write(channel, buffer);
+		buffer.put(END_OF_FILE);
+		write(channel, buffer);
+	}
+
+	/**
+	 * This helper method forces a directory's entries to disk so that a
+	 * rename inside it survives a crash. Some platforms can't open a
+	 * directory this way, in which case there's nothing more we can do.
+	 * 
+	 * @param dir The directory to force.
+	 */
+	private void forceDirectory(File dir)
+	{
+		try
+		{
+			FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ);
+			try
+			{
+				channel.force(true);
+			}
+			finally
+			{
+				channel.close();
+			}
+		}
+		catch(IOException ioe)
+		{
+			// NOT SUPPORTED HERE, THE RENAME STILL HAPPENED
+		}
 	}
 
 	/**
-	 * This helper method saves just the .dbf file header portion
-	 * of the mapTable argument using the dos stream.
+	 * This helper method puts just the .dbf file header portion
+	 * of the mapTable argument into the buffer argument. Note that
+	 * the record count written is the number of records actually in
+	 * the table, since those are what will follow.
 	 * 
-	 * @param dos The stream writing to the .dbf file.
+	 * @param buffer Little endian buffer with room for the header.
 	 * 
 	 * @param mapTable The dbf table being saved.
-	 * 
-	 * @throws IOException Thrown when the stream fails.
 	 */
-	private void saveHeader( DataOutputStream dos, DBFTable mapTable) throws IOException
+	private void saveHeader(ByteBuffer buffer, DBFTable mapTable)
 	{
 		// DBF file type (0)
-		dos.writeByte(mapTable.getFileType());
+		buffer.put(mapTable.getFileType());
 
 		// LAST UPDATE (1-3)
 		byte year = (byte)(mapTable.getLastModifiedDate().get(Calendar.YEAR)-1900);
 		byte month = (byte)(mapTable.getLastModifiedDate().get(Calendar.MONTH)+1);
 		byte day = (byte)(mapTable.getLastModifiedDate().get(Calendar.DATE));
-		dos.writeByte(year);
-		dos.writeByte(month);
-		dos.writeByte(day);
+		buffer.put(year);
+		buffer.put(month);
+		buffer.put(day);
 
 		// NUMBER OF RECORDS IN FILE (4-7)
-		int numberOfRecordsInFile = Integer.reverseBytes(mapTable.getNumberOfRecords());
-		dos.writeInt(numberOfRecordsInFile);
+		buffer.putInt(mapTable.getNumRecords());
 
 		// POSITION OF FIRST DATA RECORDED (8-9)
-		short positionOfFirstDataRecorded = Short.reverseBytes(mapTable.getPositionOfFirstDataRecorded());
-		dos.writeShort(positionOfFirstDataRecorded);
+		buffer.putShort(mapTable.getPositionOfFirstDataRecorded());
 
 		// LENGTH OF ONE DATA RECORD, INCLUDING DELETE FLAG (10-11)
-		short dataRecordLength = Short.reverseBytes(mapTable.getDataRecordLength());
-		dos.writeShort(dataRecordLength);
+		buffer.putShort(mapTable.getDataRecordLength());
 
 		// ZEROES (12-13)
-		short zeroes = Short.reverseBytes(mapTable.getZeroes());
-		dos.writeShort(zeroes);
+		buffer.putShort(mapTable.getZeroes());
 
 		// DBASE IV Transaction Flag (14)
-		dos.writeByte(mapTable.getDbaseTransactionFlag());
+		buffer.put(mapTable.getDbaseTransactionFlag());
 
 		// DBASE IV Encryption Flag (15)
-		dos.writeByte(mapTable.getDbaseEncryptionFlag());
+		buffer.put(mapTable.getDbaseEncryptionFlag());
 
 		// Multiuser Processing 12 Bytes (16-27)
 		int[] mup = mapTable.getMup();
-		dos.writeInt(Integer.reverseBytes(mup[0]));
-		dos.writeInt(Integer.reverseBytes(mup[1]));
-		dos.writeInt(Integer.reverseBytes(mup[2]));
+		buffer.putInt(mup[0]);
+		buffer.putInt(mup[1]);
+		buffer.putInt(mup[2]);
 
 		// TABLE FLAGS (28)
-		dos.writeByte(mapTable.getFlags());
+		buffer.put(mapTable.getFlags());
 
 		// CODE PAGE MARK/LANGUAGE DRIVER ID (29)
-		dos.writeByte(mapTable.getCodePageMark());
+		buffer.put(mapTable.getCodePageMark());
 
 		// RESERVED, CONTAINS 0x00 (30-31)
-		dos.writeShort(Short.reverseBytes(mapTable.getReserved()));
+		buffer.putShort(mapTable.getReserved());
 	}
 
 	/**
-	 * This method saves all of the fields in the mapTable argument
-	 * via the dos stream, which is setup at the proper location.
+	 * This method puts all of the fields in the mapTable argument
+	 * into the buffer argument, writing the buffer to the channel
+	 * whenever it fills up.
+	 * 
+	 * @param channel Channel writing to the .dbf file.
 	 * 
-	 * @param dos Output stream writing to the .dbf file.
+	 * @param buffer Little endian buffer the fields are put into.
 	 * 
 	 * @param mapTable The dbf table being saved.
 	 * 
-	 * @throws IOException Thrown when the stream fails.
+	 * @throws IOException Thrown when the channel fails.
 	 */
-	private void saveFields(DataOutputStream dos, DBFTable mapTable) throws IOException
+	private void saveFields(FileChannel channel, ByteBuffer buffer, DBFTable mapTable) throws IOException
 	{
 		// NUMBER OF FIELDS (COLUMNS) IN THE TABLE
 		int numFields = (mapTable.getPositionOfFirstDataRecorded() - 32 - 2 + 1)/32;
 
 		for (int i = 0; i < numFields; i++)
 		{
+			// MAKE ROOM FOR THE DESCRIPTOR, AND THE TERMINATOR AFTER IT
+			if (buffer.remaining() <= FIELD_DESCRIPTOR_LENGTH)
+				write(channel, buffer);
+
 			// HERE'S THE FIELD WE'RE SAVING
 			DBFField fieldToSave = mapTable.getField(i);
 
-			// FIELD NAME
+			// FIELD NAME, PADDED WITH 0x00
 			String fieldName = fieldToSave.getName();
 			int j = 0;
-			for (; j < fieldName.length(); j++)
-			{
-				byte c = (byte)fieldName.charAt(j);
-				dos.writeByte(c);
-			}
-			byte z = (byte)0x00;
-			while (j < 11)
-			{
-				dos.writeByte(z);
-				j++;
-			}
+			for (; (j < fieldName.length()) && (j < 11); j++)
+				buffer.put((byte)fieldName.charAt(j));
+			for (; j < 11; j++)
+				buffer.put((byte)0x00);
 
 			// FIELD TYPE
-			dos.writeByte((byte)(fieldToSave.getType().toString().charAt(0)));
+			buffer.put((byte)(fieldToSave.getType().toString().charAt(0)));
 
 			// DISPLACEMENT OF FIELD IN RECORD (12-15)
-			dos.writeInt(Integer.reverseBytes(fieldToSave.getDisplacement()));
+			buffer.putInt(fieldToSave.getDisplacement());
 
 			// LENGTH OF FIELD (16)
-			dos.writeByte((byte)fieldToSave.getLength());
+			buffer.put((byte)fieldToSave.getLength());
 
 			// NUMBER OF DECIMAL PLACES (17)
-			dos.writeByte(fieldToSave.getNumberOfDecimalPlaces());
+			buffer.put((byte)fieldToSave.getNumberOfDecimalPlaces());
 
 			// FIELD FLAGS (18)
-			dos.writeByte(fieldToSave.getFlags());
+			buffer.put(fieldToSave.getFlags());
 
 			// AUTOINCREMENT NEXT (19-22)
-			dos.writeInt(Integer.reverseBytes(fieldToSave.getNext()));
+			buffer.putInt(fieldToSave.getNext());
 
 			// AUTOINCREMENT STEP (23)
-			dos.writeByte(fieldToSave.getStep());
+			buffer.put((byte)fieldToSave.getStep());
 
-			// RESERVED (24-31) - WE WON'T USE THIS
-			dos.writeLong(fieldToSave.getReservedData());
+			// RESERVED (24-31) - WE WON'T USE THIS, BUT IT'S ALWAYS BEEN BIG ENDIAN
+			buffer.order(ByteOrder.BIG_ENDIAN);
+			buffer.putLong(fieldToSave.getReservedData());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
 		}
 	}
 
 	/**
-	 * This method saves all the records in the mapTable argument
-	 * using the dos stream.
+	 * This method saves all the records in the mapTable argument, in
+	 * key order. Each record is encoded into a reusable record sized
+	 * array, which is then copied into the buffer argument, and the
+	 * buffer is written to the channel whenever it fills up.
+	 * 
+	 * @param channel Channel writing to the .dbf file.
 	 * 
-	 * @param dos Output stream writing to the .dbf file.
+	 * @param buffer Buffer the records are put into.
 	 * 
 	 * @param mapTable The dbf table being saved.
 	 * 
-	 * @throws IOException Thrown when the stream fails.
+	 * @throws IOException Thrown when the channel fails.
 	 */
-	private void saveRecords(	DataOutputStream dos, DBFTable mapTable) throws IOException
+	private void saveRecords(FileChannel channel, ByteBuffer buffer, DBFTable mapTable) throws IOException
 	{
+		int[] fieldOffsets = getFieldOffsets(mapTable);
+		byte[] recordBytes = new byte[getRecordLength(mapTable)];
+
 		// WRITE ALL ROW DATA
-		for (int i = 0; i < mapTable.getNumberOfRecords(); i++)
-		{	
+		Iterator<DBFRecord> recordsIt = mapTable.recordsIterator();
+		while (recordsIt.hasNext())
+		{
 			// HERE'S THE RECORD WE ARE SAVING
-			DBFRecord recordToSave = mapTable.getRecord(i);
+			DBFRecord recordToSave = recordsIt.next();
+			encodeRecord(recordToSave, mapTable, fieldOffsets, recordBytes);
 
-			// THERE IS A MYSTERY BYTE BEFORE EACH RECORD
-			dos.writeByte(recordToSave.getMystery());
+			// A RECORD MAY BE SPLIT ACROSS TWO WRITES
+			int offset = 0;
+			while (offset < recordBytes.length)
+			{
+				if (!buffer.hasRemaining())
+					write(channel, buffer);
+				int length = Math.min(buffer.remaining(), recordBytes.length - offset);
+				buffer.put(recordBytes, offset, length);
+				offset += length;
+			}
+		}
+	}
+
+	/**
+	 * This helper method encodes the recordToSave argument into the
+	 * recordBytes argument, padding every field with blanks.
+	 * 
+	 * @param recordToSave The record being saved.
+	 * 
+	 * @param mapTable The dbf table the record belongs to.
+	 * 
+	 * @param fieldOffsets Where each field starts inside a record.
+	 * 
+	 * @param recordBytes Array exactly one record long to encode into.
+	 */
+	void encodeRecord(DBFRecord recordToSave, DBFTable mapTable, int[] fieldOffsets, byte[] recordBytes)
+	{
+		// START WITH NOTHING BUT PADDING
+		Arrays.fill(recordBytes, (byte)' ');
 
-			// LOAD DATA FOR EACH FIELD
-			Iterator<DBFField> fieldsIt = mapTable.fieldsIterator();
-			int fieldsCounter = 0;
-			while (fieldsIt.hasNext())
+		// THERE IS A MYSTERY BYTE BEFORE EACH RECORD
+		recordBytes[0] = recordToSave.getMystery();
+
+		// TEXT AND NUMBERS ARE BOTH WRITTEN LEFT JUSTIFIED
+		for (int i = 0; i < fieldOffsets.length; i++)
+		{
+			String text = recordToSave.getString(i);
+			if (text != null)
 			{
-				// WHAT TYPE OF FIELD IS IT (character data, numbers, etc.)?
-				DBFField field = fieldsIt.next();
-
-				// TEXT?
-				if (field.getType() == DBFFieldType.C)
-				{
-					int j = 0;
-					Object data = recordToSave.getData(fieldsCounter);
-					String text;
-					if (data == null)
-						text = "";
-					else
-						text = data.toString();
-					while (j < text.length())
-					{
-						dos.writeByte((byte)text.charAt(j));
-						j++;
-					}
-					while (j < field.getLength())
-					{
-						dos.writeByte((byte)' ');
-						j++;
-					}
-				}
-				// IT MUST BE AN 'N' TYPE, THOSE ARE THE ONLY TWO WE'RE USING
-				else
-				{
-					Object data = recordToSave.getData(fieldsCounter);
-					String numText;
-					if (data == null)
-						numText = "";
-					else
-						numText = data.toString();
-					int x = 0;
-					while (x < numText.length())
-					{
-						dos.writeByte((byte)numText.charAt(x));
-						x++;
-					}
-					while (x < field.getLength())
-					{
-						dos.writeByte((byte)' ');
-						x++;
-					}
-				}
-				fieldsCounter++;
+				int offset = fieldOffsets[i];
+				int length = Math.min(text.length(), mapTable.getField(i).getLength());
+				for (int j = 0; j < length; j++)
+					recordBytes[offset + j] = (byte)text.charAt(j);
 			}
 		}
 	}
@@ -248,7 +429,9 @@ public class DBFFileIO
 	/**
 	 * This method loads the .dbf file represented by the file argument
 	 * and puts all the data found inside the file into a DBFTable
-	 * object, which it returns.
+	 * object, which it returns. Note that the file is read in large
+	 * blocks through a FileChannel and each field is decoded straight
+	 * out of those blocks, rather than one byte at a time.
 	 * 
 	 * @param file File location of .dbf to load.
 	 * 
@@ -261,284 +444,923 @@ public class DBFFileIO
 	 */
 	public DBFTable loadDBF(File file) throws IOException
 	{
-		// THIS IS THE TABLE WE'RE GOING TO FILL AND THEN RETURN
-		DBFTable mapTable = new DBFTable();
+		return loadDBF(file, null, null);
+	}
 
-		// WE ARE GOING TO READ RAW BYTE DATA
-		FileInputStream fis = new FileInputStream(file);
-		DataInputStream dis = new DataInputStream(fis);
+	/**
+	 * This method loads only some of the fields of the .dbf file represented
+	 * by the file argument into a DBFTable, which it returns. The data for
+	 * all other fields is skipped over without being decoded, so the fewer
+	 * fields asked for, the faster the load and the smaller the table.
+	 * 
+	 * Note that the table's fields will be in file order, and that the key
+	 * field is always loaded, even if it wasn't asked for, so that records
+	 * whose other fields are the same aren't lost. The table's header is
+	 * updated to describe only the fields that were loaded.
+	 * 
+	 * @param file File location of .dbf to load.
+	 * 
+	 * @param fieldNames Names of the fields to load, along with the key
+	 * field. Names of fields that aren't in the file are ignored, and if
+	 * this is null all fields are loaded.
+	 * 
+	 * @return A constructed and initialized DBF table containing the
+	 * requested data found in the file.
+	 * 
+	 * @throws IOException Thrown when an error is encountered reading
+	 * the .dbf file.
+	 */
+	public DBFTable loadDBF(File file, Set<String> fieldNames) throws IOException
+	{
+		return loadDBF(file, fieldNames, null);
+	}
 
-		// LOAD THE FIRST 32 BYTES OF THE HEADER
-		loadHeader(dis, mapTable);
+	/**
+	 * This method loads only the records of the .dbf file represented by
+	 * the file argument that the filter argument keeps, and optionally only
+	 * some of their fields, into a DBFTable, which it returns. The filter
+	 * is checked against the raw data of each record before anything is
+	 * decoded, so records that are turned down cost almost nothing.
+	 * 
+	 * Note that the table's numberOfRecords is the number of records that
+	 * were kept, and that the key field is always loaded.
+	 * 
+	 * @param file File location of .dbf to load.
+	 * 
+	 * @param fieldNames Names of the fields to load, or null for all of them.
+	 * 
+	 * @param filter Decides which records to load, or null for all of them.
+	 * Note that it may use fields that aren't being loaded.
+	 * 
+	 * @return A constructed and initialized DBF table containing the
+	 * requested data found in the file.
+	 * 
+	 * @throws IOException Thrown when an error is encountered reading
+	 * the .dbf file.
+	 */
+	public DBFTable loadDBF(File file, Set<String> fieldNames, DBFRecordFilter filter) throws IOException
+	{
+		// WE'LL STREAM THE RECORDS INTO THE TABLE WITH THE HEADER
+		DBFRecordStream recordStream = stream(file, fieldNames, filter, false);
+		try
+		{
+			// THIS IS THE TABLE WE'RE GOING TO FILL AND THEN RETURN
+			DBFTable mapTable = recordStream.getHeader();
 
-		// SUBRECORDS (32-(positionOfFirstDataRecorded-3))
-		loadFields(dis, mapTable);
+			// AND NOW READ THE ACTUAL DATA
+			while (recordStream.hasNext())
+			{
+				DBFRecord recordToAdd = recordStream.next();
+				mapTable.addRecord(mapTable.getKey(recordToAdd), recordToAdd);
+			}
 
+			// ALL DONE, NOW RETURN THE TABLE, WHICH MAY HAVE FEWER
+			// RECORDS THAN THE FILE IF SOME WERE FILTERED OUT
+			mapTable.setNumberOfRecords(mapTable.getNumRecords());
+			return mapTable;
+		}
+		catch(UncheckedIOException uioe)
+		{
+			throw uioe.getCause();
+		}
+		finally
+		{
+			recordStream.close();
+		}
+	}	
+
+	/**
+	 * This method loads the .dbf file represented by the file argument
+	 * into a DBFTable like loadDBF does, but splits the work of reading and
+	 * decoding the records across all the cores of the machine. Since every
+	 * record has the same length, the records are divided into chunks that
+	 * are each decoded on their own, and the results are then added to the
+	 * table in file order, so the table is the same as loadDBF would make.
+	 * 
+	 * @param file File location of .dbf to load.
+	 * 
+	 * @return A constructed and initialized DBF table containing the
+	 * data found in the file.
+	 * 
+	 * @throws IOException Thrown when an error is encountered reading
+	 * the .dbf file.
+	 */
+	public DBFTable loadDBFInParallel(File file) throws IOException
+	{
+		return loadDBFInParallel(file, null, null);
+	}
+
+	/**
+	 * This method loads the records of the .dbf file represented by the
+	 * file argument that the filter argument keeps, and optionally only some
+	 * of their fields, splitting the work across all the cores of the machine.
+	 * 
+	 * @param file File location of .dbf to load.
+	 * 
+	 * @param fieldNames Names of the fields to load, or null for all of them.
+	 * 
+	 * @param filter Decides which records to load, or null for all of them.
+	 * 
+	 * @return A constructed and initialized DBF table containing the
+	 * requested data found in the file.
+	 * 
+	 * @throws IOException Thrown when an error is encountered reading
+	 * the .dbf file.
+	 */
+	public DBFTable loadDBFInParallel(File file, Set<String> fieldNames, DBFRecordFilter filter) throws IOException
+	{
+		DBFRecordStream recordStream = stream(file, fieldNames, filter, false);
+		try
+		{
+			// THIS IS THE TABLE WE'RE GOING TO FILL AND THEN RETURN
+			DBFTable mapTable = recordStream.getHeader();
+
+			// CUT THE RECORDS UP INTO CHUNKS AND DECODE THEM ALL AT ONCE
+			int numRecords = mapTable.getNumberOfRecords();
+			int recordsPerChunk = Math.max(1, DBFRecordStream.RECORD_BLOCK_SIZE / getRecordLength(mapTable));
+			int numChunks = (int)((numRecords + (long)recordsPerChunk - 1) / recordsPerChunk);
+			ArrayList<LoadChunkTask> chunks = new ArrayList<LoadChunkTask>(numChunks);
+			for (int i = 0; i < numChunks; i++)
+			{
+				int firstRecord = i * recordsPerChunk;
+				chunks.add(new LoadChunkTask(recordStream, firstRecord, Math.min(recordsPerChunk, numRecords - firstRecord)));
+			}
+			ForkJoinTask.invokeAll(chunks);
+
+			// AND NOW ADD THEM TO THE TABLE IN FILE ORDER
+			for (int i = 0; i < numChunks; i++)
+				mapTable.addRecords(chunks.get(i).join());
+
+			// ALL DONE, NOW RETURN THE TABLE, WHICH MAY HAVE FEWER
+			// RECORDS THAN THE FILE IF SOME WERE FILTERED OUT
+			mapTable.setNumberOfRecords(mapTable.getNumRecords());
+			return mapTable;
+		}
+		catch(UncheckedIOException uioe)
+		{
+			throw uioe.getCause();
+		}
+		finally
+		{
+			recordStream.close();
+		}
+	}
+
+	/**
+	 * This method loads the .dbf file represented by the file argument
+	 * into a column oriented store rather than a DBFTable. The records
+	 * are streamed straight into the store's columns, so no DBFRecord
+	 * is kept for any of them.
+	 * 
+	 * @param file File location of .dbf to load.
+	 * 
+	 * @return A store containing all the data found in the file, with
+	 * the records in file order.
+	 * 
+	 * @throws IOException Thrown when an error is encountered reading
+	 * the .dbf file.
+	 */
+	public DBFColumnStore loadColumns(File file) throws IOException
+	{
+		DBFRecordStream recordStream = stream(file, true);
+		try
+		{
+			DBFColumnStore store = new DBFColumnStore(recordStream.getHeader());
+			while (recordStream.hasNext())
+				store.addRecord(recordStream.next());
+			return store;
+		}
+		catch(UncheckedIOException uioe)
+		{
+			throw uioe.getCause();
+		}
+		finally
+		{
+			recordStream.close();
+		}
+	}
+
+	/**
+	 * This method opens the .dbf file represented by the file argument
+	 * for reading its records one at a time. Only the header and fields
+	 * are loaded up front, so this can be used to go through files of
+	 * any size in constant memory.
+	 * 
+	 * @param file File location of .dbf to read.
+	 * 
+	 * @return A stream providing the file's header and all its records
+	 * in file order. It should be closed when it is no longer needed.
+	 * 
+	 * @throws IOException Thrown when an error is encountered reading
+	 * the .dbf file header.
+	 */
+	public DBFRecordStream stream(File file) throws IOException
+	{
+		return stream(file, false);
+	}
+
+	/**
+	 * This method opens the .dbf file represented by the file argument
+	 * for reading its records one at a time, optionally filling in the
+	 * same record each time rather than making a new one.
+	 * 
+	 * @param file File location of .dbf to read.
+	 * 
+	 * @param reuseRecord If true, every record the stream provides will be
+	 * the same DBFRecord object, filled in with the next record's data.
+	 * 
+	 * @return A stream providing the file's header and all its records
+	 * in file order. It should be closed when it is no longer needed.
+	 * 
+	 * @throws IOException Thrown when an error is encountered reading
+	 * the .dbf file header.
+	 */
+	public DBFRecordStream stream(File file, boolean reuseRecord) throws IOException
+	{
+		return stream(file, null, null, reuseRecord);
+	}
+
+	/**
+	 * This method opens the .dbf file represented by the file argument
+	 * for reading some of the fields of its records one at a time. The
+	 * data for all other fields is skipped over without being decoded, as
+	 * are all records the filter argument turns down.
+	 * 
+	 * @param file File location of .dbf to read.
+	 * 
+	 * @param fieldNames Names of the fields to read, along with the key
+	 * field, which is always read. Names of fields that aren't in the file
+	 * are ignored, and if this is null all fields are read.
+	 * 
+	 * @param filter Decides which records to read, or null for all of them.
+	 * 
+	 * @param reuseRecord If true, every record the stream provides will be
+	 * the same DBFRecord object, filled in with the next record's data.
+	 * 
+	 * @return A stream providing a header describing the requested fields
+	 * and all the file's records in file order. It should be closed when
+	 * it is no longer needed.
+	 * 
+	 * @throws IOException Thrown when an error is encountered reading
+	 * the .dbf file header.
+	 * 
+	 * @throws IllegalArgumentException Thrown when the filter uses a
+	 * field that isn't in the file.
+	 */
+	public DBFRecordStream stream(File file, Set<String> fieldNames, DBFRecordFilter filter, boolean reuseRecord) throws IOException
+	{
+		// THIS WILL ONLY GET THE HEADER AND THE FIELDS
+		DBFTable fileHeader = new DBFTable();
+		FileChannel channel = new FileInputStream(file).getChannel();
+		try
+		{
+			loadTableHeader(channel, fileHeader);
+
+			// WHERE ARE THE RECORDS AND WHERE IS EACH FIELD INSIDE ONE?
+			long firstRecordPosition = fileHeader.getPositionOfFirstDataRecorded() & 0xffff;
+			int recordLength = getRecordLength(fileHeader);
+			int[] fieldOffsets = getFieldOffsets(fileHeader);
+
+			// THE FILTER GOES BY THE FILE'S FIELDS, NOT JUST THE ONES WE READ
+			if (filter != null)
+				filter = filter.bind(fileHeader, fieldOffsets);
+
+			// DROP ANY FIELDS WE DON'T WANT
+			DBFTable header = fileHeader;
+			if (fieldNames != null)
+			{
+				header = new DBFTable();
+				fieldOffsets = projectFields(fileHeader, fieldOffsets, fieldNames, header);
+			}
+			return new DBFRecordStream(channel, header, firstRecordPosition, recordLength, fieldOffsets, filter, this, reuseRecord);
+		}
+		catch(IOException ioe)
+		{
+			channel.close();
+			throw ioe;
+		}
+		catch(IllegalArgumentException iae)
+		{
+			channel.close();
+			throw iae;
+		}
+	}
+
+	/**
+	 * This helper method fills in the projectedHeader argument with the same
+	 * header as the fileHeader argument, but only the fields named in the
+	 * fieldNames argument and the key field. The key field is kept even if it
+	 * isn't named, since records are stored by key and without it records
+	 * that are the same in the named fields would replace each other. The
+	 * header's lengths are updated to match.
+	 * 
+	 * @param fileHeader Table with the header and all the fields in the file.
+	 * 
+	 * @param fieldOffsets Where each of the file's fields is inside a record.
+	 * 
+	 * @param fieldNames Names of the fields to keep.
+	 * 
+	 * @param projectedHeader Empty table to fill in.
+	 * 
+	 * @return Where each of the kept fields is inside a record.
+	 */
+	private int[] projectFields(DBFTable fileHeader, int[] fieldOffsets, Set<String> fieldNames, DBFTable projectedHeader)
+	{
+		// COPY THE FILE DESCRIPTION
+		GregorianCalendar lastModifiedDate = fileHeader.getLastModifiedDate();
+		projectedHeader.setFileType(fileHeader.getFileType());
+		projectedHeader.setLastModifiedDate(	lastModifiedDate.get(Calendar.YEAR),
+												lastModifiedDate.get(Calendar.MONTH),
+												lastModifiedDate.get(Calendar.DATE));
+		projectedHeader.setNumberOfRecords(fileHeader.getNumberOfRecords());
+		projectedHeader.setZeroes(fileHeader.getZeroes());
+		projectedHeader.setDbaseTransactionFlag(fileHeader.getDbaseTransactionFlag());
+		projectedHeader.setDbaseEncryptionFlag(fileHeader.getDbaseEncryptionFlag());
+		projectedHeader.setMup(fileHeader.getMup());
+		projectedHeader.setFlags(fileHeader.getFlags());
+		projectedHeader.setCodePageMark(fileHeader.getCodePageMark());
+		projectedHeader.setReserved(fileHeader.getReserved());
+		projectedHeader.setTerminator(fileHeader.getTerminator());
+
+		// KEEP ONLY THE FIELDS THAT WERE ASKED FOR, AND THE KEY
+		int[] projectedOffsets = new int[fieldOffsets.length];
+		int numProjected = 0;
+		for (int i = 0; i < fileHeader.getNumFields(); i++)
+		{
+			DBFField field = fileHeader.getField(i);
+			if (i == fileHeader.getKeyIndex())
+				projectedHeader.setKeyIndex(numProjected);
+			else if (!fieldNames.contains(field.getName()))
+				continue;
+			projectedHeader.addField(field);
+			projectedOffsets[numProjected] = fieldOffsets[i];
+			numProjected++;
+		}
+
+		// AND DESCRIBE THE RECORDS AS THEY WILL BE NOW
+		projectedHeader.updateDataRecordLength();
+		projectedHeader.updatePositionOfFirstDataRecorded();
+		return Arrays.copyOf(projectedOffsets, numProjected);
+	}
+
+	/**
+	 * This method loads only the header and field descriptors of the .dbf
+	 * file represented by the file argument, which is all that's needed to
+	 * know how many records it has and what its fields are. None of the
+	 * records are read.
+	 * 
+	 * @param file File location of .dbf to probe.
+	 * 
+	 * @return A table containing the file's header and fields, but no records.
+	 * 
+	 * @throws IOException Thrown when an error is encountered reading
+	 * the .dbf file.
+	 */
+	public DBFTable loadDBFHeader(File file) throws IOException
+	{
+		DBFTable header = new DBFTable();
+		FileChannel channel = new FileInputStream(file).getChannel();
+		try
+		{
+			loadTableHeader(channel, header);
+			return header;
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+
+	/**
+	 * This method opens the .dbf file represented by the file argument
+	 * without loading any of its records. Instead, the record section
+	 * of the file is memory mapped and each record is only decoded when
+	 * it is asked for, so opening even a very large file only costs as
+	 * much as reading its header.
+	 * 
+	 * @param file File location of .dbf to open.
+	 * 
+	 * @return A table providing read access to the mapped file. It should
+	 * be closed when it is no longer needed.
+	 * 
+	 * @throws IOException Thrown when an error is encountered reading
+	 * the .dbf file, or if the file is shorter than its header says.
+	 */
+	public MappedDBFTable mapDBF(File file) throws IOException
+	{
+		// THIS WILL ONLY GET THE HEADER AND THE FIELDS
+		DBFTable header = new DBFTable();
+		FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+		try
+		{
+			loadTableHeader(channel, header);
+			return new MappedDBFTable(channel, header, getFieldOffsets(header), this);
+		}
+		catch(IOException ioe)
+		{
+			channel.close();
+			throw ioe;
+		}
+	}
+
+	/**
+	 * This method rewrites a single record of the .dbf file represented
+	 * by the file argument, leaving the rest of the file alone. Since every
+	 * record has the same length, record i is always found at
+	 * positionOfFirstDataRecorded + (i * dataRecordLength), so only the
+	 * header and that one record are touched no matter how big the file is.
+	 * The header's last update date is set to today.
+	 * 
+	 * Note that recordIndex is the record's position in the file. For files
+	 * written by saveDBF that's its position in key order.
+	 * 
+	 * @param file File location of the .dbf to update.
+	 * 
+	 * @param recordIndex Index of the record in the file.
+	 * 
+	 * @param recordToSave The new data for the record, which must have
+	 * the same fields as the file.
+	 * 
+	 * @throws IOException Thrown when an error is encountered reading or
+	 * writing the .dbf file.
+	 * 
+	 * @throws IllegalArgumentException Thrown when there is no such record
+	 * in the file, or when the record doesn't match the file's fields.
+	 */
+	public void updateRecord(File file, int recordIndex, DBFRecord recordToSave) throws IOException
+	{
+		FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+		try
+		{
+			// WE NEED THE FILE'S OWN FIELDS TO FIND AND ENCODE THE RECORD
+			DBFTable header = new DBFTable();
+			loadTableHeader(channel, header);
+			if ((recordIndex < 0) || (recordIndex >= header.getNumberOfRecords()))
+				throw new IllegalArgumentException("Record " + recordIndex + " of " + header.getNumberOfRecords());
+			if (recordToSave.getNumFields() != header.getNumFields())
+				throw new IllegalArgumentException("Record has " + recordToSave.getNumFields() + " fields, file has " + header.getNumFields());
+
+			// OVERWRITE JUST THAT RECORD'S SLOT
+			byte[] recordBytes = new byte[getRecordLength(header)];
+			encodeRecord(recordToSave, header, getFieldOffsets(header), recordBytes);
+			long position = (header.getPositionOfFirstDataRecorded() & 0xffff) + ((long)recordIndex * recordBytes.length);
+			write(channel, ByteBuffer.wrap(recordBytes), position);
+
+			// AND NOTE THAT THE FILE CHANGED
+			saveLastUpdate(channel, new GregorianCalendar());
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+
+	/**
+	 * This method opens the .dbf file represented by the file argument
+	 * for adding records to the end of it. Only the header is read, none
+	 * of the records already in the file are loaded or rewritten.
+	 * 
+	 * @param file File location of the .dbf to add to.
+	 * 
+	 * @return An appender for the file. It must be closed, which writes
+	 * any records still buffered.
+	 * 
+	 * @throws IOException Thrown when an error is encountered reading
+	 * the .dbf file, or if the file is shorter than its header says.
+	 */
+	public DBFAppender appendTo(File file) throws IOException
+	{
+		// THIS WILL ONLY GET THE HEADER AND THE FIELDS
+		DBFTable header = new DBFTable();
+		FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+		try
+		{
+			loadTableHeader(channel, header);
+			return new DBFAppender(channel, header, this);
+		}
+		catch(IOException ioe)
+		{
+			channel.close();
+			throw ioe;
+		}
+	}
+
+	/**
+	 * This helper method loads the 32 byte header, all the field
+	 * descriptors, and the header record terminator from the channel
+	 * argument into the mapTable argument.
+	 * 
+	 * @param channel Channel positioned at the start of the .dbf file.
+	 * 
+	 * @param mapTable The dbf table being loaded.
+	 * 
+	 * @throws IOException Thrown when the channel fails.
+	 */
+	void loadTableHeader(FileChannel channel, DBFTable mapTable) throws IOException
+	{
+		// LOAD THE FIRST 32 BYTES OF THE HEADER
+		ByteBuffer header = readFully(channel, HEADER_LENGTH);
+		loadHeader(header, mapTable);
+
+		// SUBRECORDS (32-(positionOfFirstDataRecorded-3)) AND THE
 		// HEADER RECORD TERMINATOR (SHOULD BE 0x0D)
-		byte terminator = dis.readByte();
+		int numFields = (mapTable.getPositionOfFirstDataRecorded() - 32 - 2 + 1)/32;
+		ByteBuffer fieldsBuffer = readFully(channel, (numFields * FIELD_DESCRIPTOR_LENGTH) + 1);
+		loadFields(fieldsBuffer, numFields, mapTable);
+		byte terminator = fieldsBuffer.get();
 		mapTable.setTerminator(terminator);
+	}
 
-		// AND NOW READ THE ACTUAL DATA
-		loadRecords(dis, mapTable);
-
-		// ALL DONE, NOW RETURN THE TABLE
-		return mapTable;
-	}	
-	
 	/**
 	 * This helper method loads just the .dbf file header portion
-	 * into the mapTable argument using the dis stream.
+	 * into the mapTable argument from the header buffer.
 	 * 
-	 * @param dis The stream reading from the .dbf file.
+	 * @param header Buffer holding the first 32 bytes of the .dbf file.
 	 * 
-	 * @param mapTable The dbf table being loadd.
-	 * 
-	 * @throws IOException Thrown when the stream fails.
+	 * @param mapTable The dbf table being loaded.
 	 */
-	private void loadHeader( 	DataInputStream dis,
-								DBFTable mapTable) throws IOException
+	private void loadHeader( 	ByteBuffer header,
+								DBFTable mapTable)
 	{
+		// EVERYTHING BUT THE FIELD NAMES IS LITTLE ENDIAN
+		header.order(ByteOrder.LITTLE_ENDIAN);
+
 		// DBF file type (0)
-		byte dbfFileType = dis.readByte();
+		byte dbfFileType = header.get();
 		mapTable.setFileType(dbfFileType);
 
 		// LAST UPDATE (1-3)
-		int year = 1900 + dis.readByte();
-		int month = dis.readByte();
-		int day = dis.readByte();
+		int year = 1900 + header.get();
+		int month = header.get();
+		int day = header.get();
 		mapTable.setLastModifiedDate(year, month, day);
 
 		// NUMBER OF RECORDS IN FILE (4-7)
-		int numberOfRecordsInFile = readLittleEndianInt(dis);
+		int numberOfRecordsInFile = header.getInt();
 		mapTable.setNumberOfRecords(numberOfRecordsInFile);
 
 		// POSITION OF FIRST DATA RECORDED (8-9)
-		short positionOfFirstDataRecorded = readLittleEndianShort(dis);
+		short positionOfFirstDataRecorded = header.getShort();
 		mapTable.setPositionOfFirstDataRecorded(positionOfFirstDataRecorded);
 
 		// LENGTH OF ONE DATA RECORD, INCLUDING DELETE FLAG (10-11)
-		short dataRecordLength = readLittleEndianShort(dis);
+		short dataRecordLength = header.getShort();
 		mapTable.setDataRecordLength(dataRecordLength);
 
 		// ZEROES (12-13)
-		short zeroes = readLittleEndianShort(dis);
+		short zeroes = header.getShort();
 		mapTable.setZeroes(zeroes);
 
 		// DBASE IV Transaction Flag (14)
-		byte dbaseTransactionFlag = dis.readByte();
+		byte dbaseTransactionFlag = header.get();
 		mapTable.setDbaseTransactionFlag(dbaseTransactionFlag);
 
 		// DBASE IV Encryption Flag (15)
-		byte dbaseEncryptionFlag = dis.readByte();
+		byte dbaseEncryptionFlag = header.get();
 		mapTable.setDbaseEncryptionFlag(dbaseEncryptionFlag);
 
 		// Multiuser Processing 12 Bytes (16-27)
 		int[] mup = new int[3];
-		mup[0] = readLittleEndianInt(dis);
-		mup[1] = readLittleEndianInt(dis);
-		mup[2] = readLittleEndianInt(dis);
+		mup[0] = header.getInt();
+		mup[1] = header.getInt();
+		mup[2] = header.getInt();
 		mapTable.setMup(mup);
 
 		// TABLE FLAGS (28)
-		byte tableFlags = dis.readByte();
+		byte tableFlags = header.get();
 		mapTable.setFlags(tableFlags);
 
 		// CODE PAGE MARK/LANGUAGE DRIVER ID (29)
-		byte pageMark = dis.readByte();
+		byte pageMark = header.get();
 		mapTable.setCodePageMark(pageMark);
 
 		// RESERVED, CONTAINS 0x00 (30-31)
-		short reserved = readLittleEndianShort(dis);
+		short reserved = header.getShort();
 		mapTable.setReserved(reserved);		
 	}
 
 	/**
-	 * This method loads all of the fields in the mapTable argument
-	 * via the dis stream, which is setup at the proper location.
+	 * This method loads all of the field descriptors found in the
+	 * fieldsBuffer argument into the mapTable argument.
 	 * 
-	 * @param dis Input stream reading from the .dbf file.
+	 * @param fieldsBuffer Buffer holding all the field descriptors, which
+	 * follow the 32 byte header in the .dbf file.
 	 * 
-	 * @param mapTable The dbf table being loaded.
+	 * @param numFields The number of field descriptors in the buffer.
 	 * 
-	 * @throws IOException Thrown when the stream fails.
+	 * @param mapTable The dbf table being loaded.
 	 */
-	private void loadFields(	DataInputStream dis,
-								DBFTable mapTable) throws IOException
+	private void loadFields(	ByteBuffer fieldsBuffer,
+								int numFields,
+								DBFTable mapTable)
 	{
-		// NUMBER OF FIELDS (COLUMNS) IN THE TABLE
-		int numFields = (mapTable.getPositionOfFirstDataRecorded() - 32 - 2 + 1)/32;
-
+		fieldsBuffer.order(ByteOrder.LITTLE_ENDIAN);
 		for (int i = 0; i < numFields; i++)
 		{
-			// ANOTHER COLUMN
+			// ANOTHER COLUMN, WHICH IS NAMED BEFORE IT'S ADDED TO THE TABLE
 			DBFField fieldToAdd = new DBFField();
-			mapTable.addField(fieldToAdd);
 
-			// FIELD NAME
-			String fieldName = "";
-			for (int j = 0; j < 11; j++)
-			{
-				byte c = dis.readByte();
-				if (c != 0)
-					fieldName += (char)c;
-			}
+			// FIELD NAME, PADDED WITH 0x00
+			int nameStart = fieldsBuffer.position();
+			int nameLength = 0;
+			while ((nameLength < 11) && (fieldsBuffer.get(nameStart + nameLength) != 0))
+				nameLength++;
+			String fieldName = new String(fieldsBuffer.array(), nameStart, nameLength, CHARSET);
 			fieldToAdd.setName(fieldName);
+			fieldsBuffer.position(nameStart + 11);
 
 			// FIELD TYPE
-			byte fieldTypeAsByte = dis.readByte();
+			byte fieldTypeAsByte = fieldsBuffer.get();
 			char fieldType = (char)fieldTypeAsByte;
 			if (fieldType == 'C') 	fieldToAdd.setType(DBFFieldType.C);
 			else					fieldToAdd.setType(DBFFieldType.N);
 
 			// DISPLACEMENT OF FIELD IN RECORD (12-15)
-			int displacementOfFieldInRecord = readLittleEndianInt(dis);
+			int displacementOfFieldInRecord = fieldsBuffer.getInt();
 			fieldToAdd.setDisplacement(displacementOfFieldInRecord);
 
 			// LENGTH OF FIELD (16)
-			int lengthOfField = dis.readByte();
-			if (lengthOfField < 0)
-				lengthOfField += 256;
+			int lengthOfField = fieldsBuffer.get() & 0xff;
 			fieldToAdd.setLength(lengthOfField);
 
 			// NUMBER OF DECIMAL PLACES (17)
-			byte numberOfDecimalPlaces = dis.readByte();
+			byte numberOfDecimalPlaces = fieldsBuffer.get();
 			fieldToAdd.setNumberOfDecimalPlaces(numberOfDecimalPlaces);
 
 			// FIELD FLAGS (18)
-			byte fieldFlags = dis.readByte();
+			byte fieldFlags = fieldsBuffer.get();
 			fieldToAdd.setFlags(fieldFlags);
 			
 			// AUTOINCREMENT NEXT (19-22)
-			int next = readLittleEndianInt(dis);
+			int next = fieldsBuffer.getInt();
 			fieldToAdd.setNext(next);
 
 			// AUTOINCREMENT STEP (23)
-			byte step = dis.readByte();
+			byte step = fieldsBuffer.get();
 			fieldToAdd.setStep(step);
 
-			// RESERVED (24-31) - WE WON'T USE THIS
-			long reservedFieldData = dis.readLong();
+			// RESERVED (24-31) - WE WON'T USE THIS, NOTE THE
+			// OLD STREAM LOADER READ IT BIG ENDIAN SO WE DO TOO
+			long reservedFieldData = fieldsBuffer.order(ByteOrder.BIG_ENDIAN).getLong();
+			fieldsBuffer.order(ByteOrder.LITTLE_ENDIAN);
 			fieldToAdd.setReservedData(reservedFieldData);
+			mapTable.addField(fieldToAdd);
 		}
 	}
 	
 	/**
-	 * This helper method reads and loads all the row data (records)
-	 * from the .dbf into the mapTable argument. Note that the dis argument
-	 * must be ready to read at the start of the records section, which is
-	 * right after the fields section.
+	 * This helper method decodes a single record out of the raw bytes
+	 * argument, which holds the record starting at recordOffset.
 	 * 
-	 * @param dis Input stream reading from the .dbf file.
+	 * @param bytes Raw .dbf data containing the record.
 	 * 
-	 * @param mapTable The dbf table being loaded.
+	 * @param recordOffset Index of the record's first byte (the mystery byte).
+	 * 
+	 * @param mapTable The dbf table the record belongs to, which provides the fields.
+	 * 
+	 * @param fieldOffsets Where each of the table's fields is inside the record.
 	 * 
-	 * @throws IOException Thrown when the stream fails.
+	 * @return The fully decoded record.
 	 */
-	private void loadRecords(	DataInputStream dis,
-				DBFTable mapTable) throws IOException
+	DBFRecord decodeRecord(byte[] bytes, int recordOffset, DBFTable mapTable, int[] fieldOffsets)
 	{
-		// READ ALL ROW DATA
-		for (int i = 0; i < mapTable.getNumberOfRecords(); i++)
-		{				
-			// HERE'S THE RECORD WE ARE LOADING
-			DBFRecord recordToAdd = new DBFRecord(mapTable.getNumFields());
+		return decodeRecord(bytes, recordOffset, mapTable, fieldOffsets, mapTable.createRecord());
+	}
 
-			// THERE IS A MYSTERY BYTE BEFORE EACH RECORD
-			byte mystery = dis.readByte();
-			recordToAdd.setMystery(mystery);
+	/**
+	 * This helper method decodes a single record out of the raw bytes
+	 * argument into the recordToAdd argument, replacing all its data.
+	 * 
+	 * @param bytes Raw .dbf data containing the record.
+	 * 
+	 * @param recordOffset Index of the record's first byte (the mystery byte).
+	 * 
+	 * @param mapTable The dbf table the record belongs to, which provides the fields.
+	 * 
+	 * @param fieldOffsets Where each of the table's fields is inside the record.
+	 * 
+	 * @param recordToAdd The record to fill in, which must have room for all the fields.
+	 * 
+	 * @return The recordToAdd argument, now fully decoded.
+	 */
+	DBFRecord decodeRecord(byte[] bytes, int recordOffset, DBFTable mapTable, int[] fieldOffsets, DBFRecord recordToAdd)
+	{
+		// THERE IS A MYSTERY BYTE BEFORE EACH RECORD
+		recordToAdd.setMystery(bytes[recordOffset]);
 
-			// LOAD DATA FOR EACH FIELD
-			Iterator<DBFField> fieldsIt = mapTable.fieldsIterator();
-			int fieldsCounter = 0;
-			while (fieldsIt.hasNext())
-			{
-				// WHAT TYPE OF FIELD IS IT (character data, numbers, etc.)?
-				DBFField field = fieldsIt.next();
-
-				// TEXT?
-				if (field.getType() == DBFFieldType.C)
-				{
-					String text = "";
-					for (int counter = 0; counter < field.getLength(); counter++)
-					{
-						char c = (char)dis.readByte();
-						text += c;
-					}
-					text = text.trim();
-					recordToAdd.setData(text, fieldsCounter);
-				}
-				// IT MUST BE AN 'N' TYPE SINCE THOSE ARE THE ONLY TWO WE'RE USING
-				else 
-				{
-					String text = "";
-					for (int counter = 0; counter < field.getLength(); counter++)
-					{
-						char c = (char)dis.readByte();
-						text += c;
-					}
-					text = text.trim();
-					if (text.contains("."))
-					{
-						double num = 0.0;
-						num = Double.parseDouble(text);
-						recordToAdd.setData(num, fieldsCounter);
-					}
-					else
-					{
-						long num = 0;
-						if (text.length() > 0)
-							num = Long.parseLong(text);
-						recordToAdd.setData(num, fieldsCounter);
-					}
-				}
-				fieldsCounter++;
-			}
-			Comparable key = (Comparable)recordToAdd.getData(mapTable.getKeyIndex());
-			mapTable.addRecord(key, recordToAdd);
-		}		
+		// LOAD DATA FOR EACH FIELD, KEEPING NUMBERS UNBOXED
+		for (int i = 0; i < fieldOffsets.length; i++)
+			DBFFieldDecoder.decodeField(bytes, recordOffset + fieldOffsets[i], mapTable.getField(i), recordToAdd, i);
+		return recordToAdd;
 	}
 
 	/**
-	 * This method reads four bytes from the dis argument and
-	 * returns an int as represented by those four bytes in
-	 * little endian form. Note that when one reads an integer
-	 * from a DataInputStream, the default means of doing so
-	 * is in big endian form, so this method has to switch the
-	 * bytes around.
+	 * This helper method decodes a single record out of the buffer
+	 * argument into the recordToAdd argument, like decodeRecord for an
+	 * array. The buffer is only read with absolute gets, so a memory
+	 * mapped file can be shared by many threads.
+	 * 
+	 * @param buffer Raw .dbf data containing the record.
+	 * 
+	 * @param recordOffset Index of the record's first byte (the mystery byte).
+	 * 
+	 * @param mapTable The dbf table the record belongs to, which provides the fields.
+	 * 
+	 * @param fieldOffsets Where each of the table's fields is inside the record.
 	 * 
+	 * @param recordToAdd The record to fill in, which must have room for all the fields.
+	 * 
+	 * @return The recordToAdd argument, now fully decoded.
 	 */
-	private int readLittleEndianInt(DataInputStream dis) throws IOException
+	DBFRecord decodeRecord(ByteBuffer buffer, int recordOffset, DBFTable mapTable, int[] fieldOffsets, DBFRecord recordToAdd)
 	{
-		// NOTE THAT I COULD HAVE USED THE Integer.reverseBytes
-		// METHOD HERE, BUT SOMETIMES IT'S EDUCATIONAL AND
-		// STRANGELY FUN TO DO THINGS YOURSELF
-		int num = dis.readInt();
-		int n0 = num & 0xff000000;
-		n0 = (n0 >> 24) & 0x000000ff;
-		int n1 = num & 0x00ff0000;
-		n1 = n1 >> 8;
-		int n2 = num & 0x0000ff00;
-		n2 = n2 << 8;
-		int n3 = num & 0x000000ff;
-		n3 = n3 << 24;
-		return n0 | n1 | n2 | n3;
+		// THERE IS A MYSTERY BYTE BEFORE EACH RECORD
+		recordToAdd.setMystery(buffer.get(recordOffset));
+
+		// LOAD DATA FOR EACH FIELD, KEEPING NUMBERS UNBOXED
+		for (int i = 0; i < fieldOffsets.length; i++)
+			DBFFieldDecoder.decodeField(buffer, recordOffset + fieldOffsets[i], mapTable.getField(i), recordToAdd, i);
+		return recordToAdd;
+	}
+
+	/**
+	 * This helper method gets the length of one record in the mapTable
+	 * argument, including its mystery byte. Note that we sum the field
+	 * lengths rather than trusting dataRecordLength since the fields
+	 * are what decide where each record's data actually is.
+	 * 
+	 * @param mapTable The dbf table whose records we want the length of.
+	 * 
+	 * @return The number of bytes in each record.
+	 */
+	int getRecordLength(DBFTable mapTable)
+	{
+		int recordLength = 1;
+		for (int i = 0; i < mapTable.getNumFields(); i++)
+			recordLength += mapTable.getField(i).getLength();
+		return recordLength;
+	}
+
+	/**
+	 * This helper method finds where each field in the mapTable argument
+	 * starts inside a record, counting the mystery byte. Like
+	 * getRecordLength, this goes by the field lengths.
+	 * 
+	 * @param mapTable The dbf table whose records we want the layout of.
+	 * 
+	 * @return The offset of each field inside a record.
+	 */
+	int[] getFieldOffsets(DBFTable mapTable)
+	{
+		int[] fieldOffsets = new int[mapTable.getNumFields()];
+		int offset = 1;
+		for (int i = 0; i < fieldOffsets.length; i++)
+		{
+			fieldOffsets[i] = offset;
+			offset += mapTable.getField(i).getLength();
+		}
+		return fieldOffsets;
 	}
 
 	/**
-	 * This helper method is similar to readLittleEndianInt except it is
-	 * used for reading a 2-byte little endian integer (short) and converting
-	 * and then returning it as a short.
+	 * This helper method rewrites the last update date (bytes 1-3) in
+	 * the header of the file the channel argument is writing.
 	 * 
-	 * @param dis Input stream being used for loading a .dbf file.
+	 * @param channel Channel writing to the .dbf file.
 	 * 
-	 * @return A two byte integer read from the.dbf file as a
-	 * little endian short.
+	 * @param lastModifiedDate The date to write.
 	 * 
-	 * @throws IOException This can occur when the stream fails.
+	 * @throws IOException Thrown when the channel fails.
 	 */
-	private short readLittleEndianShort(DataInputStream dis) throws IOException
+	void saveLastUpdate(FileChannel channel, GregorianCalendar lastModifiedDate) throws IOException
 	{
-		short num = dis.readShort();
-		return Short.reverseBytes(num);
+		byte[] date = new byte[3];
+		date[0] = (byte)(lastModifiedDate.get(Calendar.YEAR)-1900);
+		date[1] = (byte)(lastModifiedDate.get(Calendar.MONTH)+1);
+		date[2] = (byte)(lastModifiedDate.get(Calendar.DATE));
+		write(channel, ByteBuffer.wrap(date), 1);
+	}
+
+	/**
+	 * This helper method writes everything in the buffer argument to the
+	 * channel starting at the position argument, without moving the channel.
+	 * 
+	 * @param channel Channel writing to the .dbf file.
+	 * 
+	 * @param buffer Buffer holding the bytes to write.
+	 * 
+	 * @param position Where in the file to write them.
+	 * 
+	 * @throws IOException Thrown when the channel fails.
+	 */
+	void write(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+	{
+		while (buffer.hasRemaining())
+			position += channel.write(buffer, position);
+	}
+
+	/**
+	 * This helper method writes everything in the buffer argument to
+	 * the channel and then empties the buffer so it can be refilled.
+	 * 
+	 * @param channel Channel writing to the .dbf file.
+	 * 
+	 * @param buffer Buffer holding the bytes to write.
+	 * 
+	 * @throws IOException Thrown when the channel fails.
+	 */
+	private void write(FileChannel channel, ByteBuffer buffer) throws IOException
+	{
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+	/**
+	 * This helper method reads exactly numBytes from the channel argument
+	 * into a newly allocated buffer, which is returned ready for reading.
+	 * 
+	 * @param channel Channel reading from the .dbf file.
+	 * 
+	 * @param numBytes The number of bytes to read.
+	 * 
+	 * @return A buffer containing the bytes that were read.
+	 * 
+	 * @throws IOException Thrown when the channel fails or the file
+	 * ends before numBytes could be read.
+	 */
+	private ByteBuffer readFully(FileChannel channel, int numBytes) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(numBytes);
+		fill(channel, buffer);
+		return buffer;
+	}
+
+	/**
+	 * This helper method keeps reading from the channel argument until the
+	 * buffer argument has no room left, and then flips it for reading.
+	 * 
+	 * @param channel Channel reading from the .dbf file.
+	 * 
+	 * @param buffer Buffer to fill up to its limit.
+	 * 
+	 * @throws IOException Thrown when the channel fails or the file
+	 * ends before the buffer could be filled.
+	 */
+	private void fill(FileChannel channel, ByteBuffer buffer) throws IOException
+	{
+		while (buffer.hasRemaining())
+		{
+			if (channel.read(buffer) < 0)
+				throw new EOFException();
+		}
+		buffer.flip();
+	}
+
+	/**
+	 * This helper class reads and decodes one chunk of a file's records
+	 * during a parallel load.
+	 */
+	private static class LoadChunkTask extends RecursiveTask<ArrayList<DBFRecord>>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private DBFRecordStream recordStream;
+		private int firstRecord;
+		private int count;
+
+		/**
+		 * This constructor sets up the task to decode a range of records.
+		 * 
+		 * @param initRecordStream Stream open on the file being loaded.
+		 * 
+		 * @param initFirstRecord Index of the first record in the chunk.
+		 * 
+		 * @param initCount Number of records in the chunk.
+		 */
+		public LoadChunkTask(DBFRecordStream initRecordStream, int initFirstRecord, int initCount)
+		{
+			recordStream = initRecordStream;
+			firstRecord = initFirstRecord;
+			count = initCount;
+		}
+
+		/**
+		 * Decodes the chunk, which will be run on one of the pool's threads.
+		 * 
+		 * @return The chunk's records in file order.
+		 */
+		protected ArrayList<DBFRecord> compute()
+		{
+			try
+			{
+				return recordStream.readRecords(firstRecord, count);
+			}
+			catch(IOException ioe)
+			{
+				throw new UncheckedIOException(ioe);
+			}
+		}
 	}
 }
\ No newline at end of file
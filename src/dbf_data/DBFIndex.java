@@ -0,0 +1,296 @@
+package dbf_data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Objects of this class index the records of a DBFTable by the data in one
+ * of its fields, which need not be the key field. A hash index finds all
+ * the records with a given value in constant time, and a sorted index can
+ * also find all the records with values in a range in logarithmic time.
+ * 
+ * The table keeps its indexes current as records are added, removed, or
+ * changed through setData, so an index never has to be rebuilt. Make one
+ * with DBFTable.createIndex or DBFTable.createSortedIndex.
+ * 
+ * Note that numbers are indexed by value, so a Long and a Double that are
+ * equal find the same records. Whole numbers are kept as Longs, so Longs
+ * too big to be exact as Doubles are still told apart.
+ * 
+ * @author Aaron Meltzer
+ */
+public class DBFIndex
+{
+	// ORDERS NUMBERS BEFORE TEXT, AND NULL BEFORE EVERYTHING
+	private static final Comparator<Object> VALUE_ORDER = new ValueComparator();
+
+	// THE RANGE OF DOUBLES THAT FIT IN A LONG, FROM -2^63 UP TO BUT NOT
+	// INCLUDING 2^63
+	private static final double LONG_MIN = (double)Long.MIN_VALUE;
+	private static final double LONG_END = -(double)Long.MIN_VALUE;
+
+	// THE FIELD WE'RE INDEXING
+	private DBFFieldRef fieldRef;
+
+	// EACH VALUE AND ALL THE RECORDS THAT HAVE IT. THE RECORDS ARE KEPT
+	// BY IDENTITY, SO ONE CAN BE TAKEN OUT WITHOUT SEARCHING FOR IT
+	private Map<Object,Set<DBFRecord>> recordsByValue;
+	private boolean sorted;
+
+	/**
+	 * This constructor builds an index of all the records in the table.
+	 * 
+	 * @param initFieldRef The field to index.
+	 * 
+	 * @param initSorted If true, the index supports range lookups.
+	 */
+	DBFIndex(DBFFieldRef initFieldRef, boolean initSorted)
+	{
+		fieldRef = initFieldRef;
+		sorted = initSorted;
+		if (sorted)
+			recordsByValue = new TreeMap<Object,Set<DBFRecord>>(VALUE_ORDER);
+		else
+			recordsByValue = new HashMap<Object,Set<DBFRecord>>();
+
+		Iterator<DBFRecord> it = fieldRef.getTable().recordsIterator();
+		while (it.hasNext())
+			add(it.next());
+	}
+
+	// ACCESSOR METHODS
+	public String	getFieldName()		{ return fieldRef.getName();	}
+	public boolean	isSorted()			{ return sorted;				}
+	public int		getNumValues()		{ return recordsByValue.size();	}
+
+	/**
+	 * This method finds all the records whose data for the indexed field
+	 * is the value argument.
+	 * 
+	 * @param value The value to look for.
+	 * 
+	 * @return The matching records, in no particular order. The list
+	 * is a copy, so it may be changed freely.
+	 */
+	public ArrayList<DBFRecord> find(Object value)
+	{
+		Set<DBFRecord> matches = recordsByValue.get(normalize(value));
+		if (matches == null)
+			return new ArrayList<DBFRecord>();
+		return new ArrayList<DBFRecord>(matches);
+	}
+
+	/**
+	 * This method finds any one record whose data for the indexed field
+	 * is the value argument, which is handy when values are unique.
+	 * 
+	 * @param value The value to look for.
+	 * 
+	 * @return A matching record, or null if there are none.
+	 */
+	public DBFRecord findFirst(Object value)
+	{
+		Set<DBFRecord> matches = recordsByValue.get(normalize(value));
+		if (matches == null)
+			return null;
+		return matches.iterator().next();
+	}
+
+	/**
+	 * This method finds all the records whose data for the indexed field
+	 * is at least the from argument and at most the to argument. This
+	 * only works with sorted indexes.
+	 * 
+	 * @param from The smallest value to find, or null for no limit.
+	 * 
+	 * @param to The largest value to find, or null for no limit.
+	 * 
+	 * @return The matching records, in order of their indexed values.
+	 * 
+	 * @throws UnsupportedOperationException Thrown when this is a hash index.
+	 */
+	public ArrayList<DBFRecord> findRange(Object from, Object to)
+	{
+		if (!sorted)
+			throw new UnsupportedOperationException("Range lookups need a sorted index on " + getFieldName());
+
+		TreeMap<Object,Set<DBFRecord>> sortedRecords = (TreeMap<Object,Set<DBFRecord>>)recordsByValue;
+		Map<Object,Set<DBFRecord>> range;
+		if ((from == null) && (to == null))
+			range = sortedRecords;
+		else if (from == null)
+			range = sortedRecords.headMap(normalize(to), true);
+		else if (to == null)
+			range = sortedRecords.tailMap(normalize(from), true);
+		else if (VALUE_ORDER.compare(normalize(from), normalize(to)) > 0)
+			return new ArrayList<DBFRecord>();
+		else
+			range = sortedRecords.subMap(normalize(from), true, normalize(to), true);
+
+		ArrayList<DBFRecord> matches = new ArrayList<DBFRecord>();
+		Iterator<Set<DBFRecord>> it = range.values().iterator();
+		while (it.hasNext())
+			matches.addAll(it.next());
+		return matches;
+	}
+
+	/**
+	 * Accessor method for getting where the indexed field is in the table's records.
+	 * 
+	 * @return The index of the field.
+	 */
+	int getFieldIndex()
+	{
+		return fieldRef.getIndex();
+	}
+
+	/**
+	 * This method adds the record argument to the index.
+	 * 
+	 * @param record A record that was added to the table.
+	 */
+	void add(DBFRecord record)
+	{
+		add(record, fieldRef.getData(record));
+	}
+
+	/**
+	 * This method removes the record argument from the index.
+	 * 
+	 * @param record A record that was removed from the table.
+	 */
+	void remove(DBFRecord record)
+	{
+		remove(record, fieldRef.getData(record));
+	}
+
+	/**
+	 * This method moves the record argument to its new value if the field
+	 * that changed is the one this index is on.
+	 * 
+	 * @param record The record that changed.
+	 * 
+	 * @param fieldIndex Index of the field that changed.
+	 * 
+	 * @param oldData The field's data before the change.
+	 * 
+	 * @param newData The field's data now.
+	 */
+	void dataChanged(DBFRecord record, int fieldIndex, Object oldData, Object newData)
+	{
+		if (fieldIndex == fieldRef.getIndex())
+		{
+			remove(record, oldData);
+			add(record, newData);
+		}
+	}
+
+	/**
+	 * This helper method files the record argument under the data argument.
+	 */
+	private void add(DBFRecord record, Object data)
+	{
+		Object value = normalize(data);
+		Set<DBFRecord> matches = recordsByValue.get(value);
+		if (matches == null)
+		{
+			matches = Collections.newSetFromMap(new IdentityHashMap<DBFRecord,Boolean>(1));
+			recordsByValue.put(value, matches);
+		}
+		matches.add(record);
+	}
+
+	/**
+	 * This helper method takes the record argument out from under the data argument.
+	 */
+	private void remove(DBFRecord record, Object data)
+	{
+		Object value = normalize(data);
+		Set<DBFRecord> matches = recordsByValue.get(value);
+		if (matches == null)
+			return;
+		matches.remove(record);
+		if (matches.isEmpty())
+			recordsByValue.remove(value);
+	}
+
+	/**
+	 * This helper method makes equal numbers equal keys, no matter if
+	 * they are Longs or Doubles, or 0 and -0. Whole numbers become Longs,
+	 * and only Doubles with a fraction, or too big for a long, stay Doubles.
+	 */
+	private static Object normalize(Object data)
+	{
+		if ((data instanceof Long) || (data instanceof Integer) || (data instanceof Short) || (data instanceof Byte))
+			return Long.valueOf(((Number)data).longValue());
+		if (data instanceof Number)
+		{
+			double num = ((Number)data).doubleValue();
+			if ((num == Math.rint(num)) && (num >= LONG_MIN) && (num < LONG_END))
+				return Long.valueOf((long)num);
+			return Double.valueOf(num);
+		}
+		return data;
+	}
+
+	/**
+	 * This helper method compares the whole number argument to the num
+	 * argument exactly, without turning the long into a double. NaN is
+	 * bigger than everything, as with Double.compare.
+	 */
+	private static int compareExactly(long whole, double num)
+	{
+		if (num < LONG_MIN)
+			return 1;
+		if (!(num < LONG_END))
+			return -1;
+
+		// WHOLE IS AT MOST THE FLOOR OF NUM IF IT'S SMALLER, AND ABOVE IT
+		// IF IT'S BIGGER, SINCE A NORMALIZED DOUBLE IS NEVER WHOLE HERE
+		long floor = (long)Math.floor(num);
+		if (whole < floor)
+			return -1;
+		if (whole > floor)
+			return 1;
+		return (num == floor) ? 0 : -1;
+	}
+
+	/**
+	 * This helper class orders the values in a sorted index.
+	 */
+	private static class ValueComparator implements Comparator<Object>
+	{
+		public int compare(Object obj1, Object obj2)
+		{
+			// NULL FIRST
+			if ((obj1 == null) || (obj2 == null))
+				return (obj1 == null) ? ((obj2 == null) ? 0 : -1) : 1;
+
+			// THEN NUMBERS, EXACTLY, THEN TEXT
+			boolean number1 = obj1 instanceof Number;
+			boolean number2 = obj2 instanceof Number;
+			if (number1 && number2)
+			{
+				boolean whole1 = obj1 instanceof Long;
+				boolean whole2 = obj2 instanceof Long;
+				if (whole1 && whole2)
+					return ((Long)obj1).compareTo((Long)obj2);
+				else if (whole1)
+					return compareExactly(((Long)obj1).longValue(), ((Double)obj2).doubleValue());
+				else if (whole2)
+					return -compareExactly(((Long)obj2).longValue(), ((Double)obj1).doubleValue());
+				return ((Double)obj1).compareTo((Double)obj2);
+			}
+			else if (number1 != number2)
+				return number1 ? -1 : 1;
+			return obj1.toString().compareTo(obj2.toString());
+		}
+	}
+}
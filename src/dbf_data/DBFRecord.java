@@ -1,92 +1,427 @@
 package dbf_data;
 
+import java.util.Arrays;
+
 /**
  * An object of this class stores all of the data
  * for a single row in a .dbf file for our table.
  * 
+ * Numbers are kept unboxed, in an array of longs with Doubles stored as
+ * their bits, and only text needs an array of references, which isn't
+ * made until the first text is set. Use the typed accessors like getLong
+ * to read numbers without creating objects. getData still works for any
+ * field, but it has to box numbers to do it.
+ * 
+ * Where each field's data is in those arrays is decided by a layout,
+ * which all the records of a table share, so adding or removing a field
+ * doesn't have to touch every record.
+ * 
  * @author Richard McKenna
  */
 public class DBFRecord
 {
+	// WHAT KIND OF DATA IS IN EACH FIELD
+	static final byte NO_DATA = 0;
+	static final byte LONG_DATA = 1;
+	static final byte DOUBLE_DATA = 2;
+	static final byte OBJECT_DATA = 3;
+
 	// WHAT IS THIS BYTE OF DATA FROM THE FILE BEFORE EACH RECORD?
 	private byte mystery;
-	
-	// HERE'S ALL THE DATA FOR THIS ROW
-	private Object[] fieldData;
+
+	// WHERE EACH FIELD'S DATA IS, USUALLY SHARED WITH THE WHOLE TABLE
+	private DBFFieldLayout layout;
+
+	// HERE'S ALL THE DATA FOR THIS ROW, BY SLOT. NUMBERS GO IN numbers,
+	// WITH DOUBLES AS THEIR BITS, AND EVERYTHING ELSE GOES IN objects.
+	// SLOTS PAST THE END OF THE ARRAYS HAVE NO DATA
+	private byte[] kinds;
+	private long[] numbers;
+	private Object[] objects;
+
+	// THE TABLE THIS RECORD WAS LAST ADDED TO, WHICH NEEDS TO
+	// HEAR ABOUT CHANGES SO IT CAN KEEP ITS INDEXES CURRENT
+	private DBFTable owner;
 
 	/**
-	 * This constructor initializes our array for all the data depending on how
-	 * many columns we will have.
+	 * This constructor initializes our arrays for all the data depending on how
+	 * many columns we will have. Every field starts out with no data.
 	 * 
 	 * @param numFields The number of fields in the table, thus the number
 	 * of pieces of data for each record.
 	 */
 	public DBFRecord(int numFields)
 	{
-		fieldData = new Object[numFields];
-		for (int i = 0; i < fieldData.length; i++)
-			fieldData[i] = null;
+		this(new DBFFieldLayout(numFields));
 	}
-	
+
+	/**
+	 * This constructor makes a record with no data that uses the initLayout
+	 * argument, which is how a table makes records that share its layout.
+	 * 
+	 * @param initLayout Where each field's data goes.
+	 */
+	DBFRecord(DBFFieldLayout initLayout)
+	{
+		layout = initLayout;
+		kinds = new byte[layout.getNumSlots()];
+		numbers = new long[layout.getNumSlots()];
+	}
+
 	// ACCESSOR METHODS
-	public int 		getNumFields() 		{ return fieldData.length;	}	
-	public Object[] getAllData()		{ return fieldData; 		}
-	public byte 	getMystery()		{ return mystery;			}
-	public Object 	getData(int index) 	{ return fieldData[index];	}
-	public Long 	getEV()				{ return (Long)fieldData[2];}
+	public int 		getNumFields() 		{ return layout.getNumFields();	}
+	public byte 	getMystery()		{ return mystery;				}
+	public Long 	getEV()				{ return (Long)getData(2);		}
+
+	/**
+	 * Accessor method for getting the data for one field.
+	 * 
+	 * @param index The index of the field.
+	 * 
+	 * @return The data, a String, Long, or Double, or null if there is none.
+	 * Note that numbers are boxed each time, so getLong and getDouble are
+	 * better for reading them.
+	 */
+	public Object getData(int index)
+	{
+		int slot = layout.getSlot(index);
+		switch (getKindAt(slot))
+		{
+			case LONG_DATA:		return Long.valueOf(numbers[slot]);
+			case DOUBLE_DATA:	return Double.valueOf(Double.longBitsToDouble(numbers[slot]));
+			case OBJECT_DATA:	return objects[slot];
+			default:			return null;
+		}
+	}
+
+	/**
+	 * Accessor method for getting a copy of the data for every field. Note
+	 * that changing the array doesn't change the record.
+	 * 
+	 * @return The data, as getData would return it for each field.
+	 */
+	public Object[] getAllData()
+	{
+		Object[] allData = new Object[getNumFields()];
+		for (int i = 0; i < allData.length; i++)
+			allData[i] = getData(i);
+		return allData;
+	}
+
+	/**
+	 * Accessor method for getting the data for one field as a whole
+	 * number. Decimal numbers are truncated.
+	 * 
+	 * @param index The index of the field.
+	 * 
+	 * @return The number, or 0 if there is none.
+	 * 
+	 * @throws ClassCastException Thrown when the data isn't a number.
+	 */
+	public long getLong(int index)
+	{
+		int slot = layout.getSlot(index);
+		switch (getKindAt(slot))
+		{
+			case LONG_DATA:		return numbers[slot];
+			case DOUBLE_DATA:	return (long)Double.longBitsToDouble(numbers[slot]);
+			case OBJECT_DATA:	return ((Number)objects[slot]).longValue();
+			default:			return 0;
+		}
+	}
+
+	/**
+	 * Accessor method for getting the data for one field as a decimal number.
+	 * 
+	 * @param index The index of the field.
+	 * 
+	 * @return The number, or 0 if there is none.
+	 * 
+	 * @throws ClassCastException Thrown when the data isn't a number.
+	 */
+	public double getDouble(int index)
+	{
+		int slot = layout.getSlot(index);
+		switch (getKindAt(slot))
+		{
+			case LONG_DATA:		return numbers[slot];
+			case DOUBLE_DATA:	return Double.longBitsToDouble(numbers[slot]);
+			case OBJECT_DATA:	return ((Number)objects[slot]).doubleValue();
+			default:			return 0;
+		}
+	}
+
+	/**
+	 * Accessor method for getting the data for one field as text.
+	 * 
+	 * @param index The index of the field.
+	 * 
+	 * @return The data as text, or null if there is none.
+	 */
+	public String getString(int index)
+	{
+		int slot = layout.getSlot(index);
+		switch (getKindAt(slot))
+		{
+			case LONG_DATA:		return Long.toString(numbers[slot]);
+			case DOUBLE_DATA:	return Double.toString(Double.longBitsToDouble(numbers[slot]));
+			case OBJECT_DATA:	return objects[slot].toString();
+			default:			return null;
+		}
+	}
+
+	/**
+	 * Accessor method for getting what kind of data is in one field.
+	 * 
+	 * @param index The index of the field.
+	 * 
+	 * @return NO_DATA, LONG_DATA, DOUBLE_DATA, or OBJECT_DATA.
+	 */
+	byte getKind(int index)
+	{
+		return getKindAt(layout.getSlot(index));
+	}
+
+	/**
+	 * This helper method gets what kind of data is in a slot.
+	 */
+	private byte getKindAt(int slot)
+	{
+		if (slot >= kinds.length)
+			return NO_DATA;
+		return kinds[slot];
+	}
 
 	// MUTATOR METHODS
-	public void setData(Object data, int index) { fieldData[index] = data;	}
 	public void setMystery(byte initMystery)	{ mystery = initMystery;	}
 
 	/**
-	 * This method is used for updating this record whenever a field
-	 * is added to the table. When that happens, we have to increase our
-	 * array of data by one to accommodate it.
+	 * Mutator method for setting the data for one field. Note that the
+	 * table this record belongs to is told about the change.
+	 * 
+	 * @param data The new data, a String, Long, or Double.
+	 * 
+	 * @param index The index of the field.
+	 */
+	public void setData(Object data, int index)
+	{
+		// THE OLD DATA IS ONLY NEEDED TO MOVE THIS RECORD IN AN INDEX
+		boolean indexed = (owner != null) && owner.isIndexed(index);
+		Object oldData = indexed ? getData(index) : null;
+		if (data instanceof Long)
+			store(LONG_DATA, ((Long)data).longValue(), index);
+		else if (data instanceof Double)
+			store(DOUBLE_DATA, Double.doubleToRawLongBits(((Double)data).doubleValue()), index);
+		else
+			storeObject(data, index);
+		if (indexed)
+			owner.dataChanged(this, index, oldData, data);
+		else if (owner != null)
+			owner.dataChanged(index);
+	}
+
+	/**
+	 * Mutator method for setting the data for one field to a whole number.
+	 * Nothing is boxed unless the table has an index on the field.
+	 * 
+	 * @param data The new number.
+	 * 
+	 * @param index The index of the field.
+	 */
+	public void setLong(long data, int index)
+	{
+		if ((owner != null) && owner.isIndexed(index))
+		{
+			setData(Long.valueOf(data), index);
+			return;
+		}
+		store(LONG_DATA, data, index);
+		if (owner != null)
+			owner.dataChanged(index);
+	}
+
+	/**
+	 * Mutator method for setting the data for one field to a decimal number.
+	 * Nothing is boxed unless the table has an index on the field.
+	 * 
+	 * @param data The new number.
+	 * 
+	 * @param index The index of the field.
+	 */
+	public void setDouble(double data, int index)
+	{
+		if ((owner != null) && owner.isIndexed(index))
+		{
+			setData(Double.valueOf(data), index);
+			return;
+		}
+		store(DOUBLE_DATA, Double.doubleToRawLongBits(data), index);
+		if (owner != null)
+			owner.dataChanged(index);
+	}
+
+	/**
+	 * Mutator method for setting the data for one field to text.
+	 * 
+	 * @param data The new text, or null for none.
+	 * 
+	 * @param index The index of the field.
+	 */
+	public void setString(String data, int index)
+	{
+		setData(data, index);
+	}
+
+	/**
+	 * This helper method puts a number, or the bits of one, in a field.
+	 */
+	private void store(byte kind, long bits, int index)
+	{
+		int slot = getWritableSlot(index);
+		if (kinds[slot] == OBJECT_DATA)
+			objects[slot] = null;
+		kinds[slot] = kind;
+		numbers[slot] = bits;
+	}
+
+	/**
+	 * This helper method puts anything that isn't a number in a field.
+	 */
+	private void storeObject(Object data, int index)
+	{
+		int slot = getWritableSlot(index);
+		if (data == null)
+		{
+			if (kinds[slot] == OBJECT_DATA)
+				objects[slot] = null;
+			kinds[slot] = NO_DATA;
+			return;
+		}
+		if (objects == null)
+			objects = new Object[kinds.length];
+		kinds[slot] = OBJECT_DATA;
+		numbers[slot] = 0;
+		objects[slot] = data;
+	}
+
+	/**
+	 * This helper method gets the slot for the field at index, first
+	 * making room for it if the field was added after this record was made.
+	 */
+	private int getWritableSlot(int index)
+	{
+		int slot = layout.getSlot(index);
+		if (slot >= kinds.length)
+		{
+			int numSlots = layout.getNumSlots();
+			kinds = Arrays.copyOf(kinds, numSlots);
+			numbers = Arrays.copyOf(numbers, numSlots);
+			if (objects != null)
+				objects = Arrays.copyOf(objects, numSlots);
+		}
+		return slot;
+	}
+
+	/**
+	 * Accessor method for getting the table this record belongs to.
+	 * 
+	 * @return The table, or null if the record isn't in one.
+	 */
+	DBFTable getOwner()
+	{
+		return owner;
+	}
+
+	/**
+	 * Mutator method for setting the table this record belongs to.
+	 * 
+	 * @param initOwner The table, or null if the record was taken out of it.
+	 */
+	void setOwner(DBFTable initOwner)
+	{
+		owner = initOwner;
+	}
+
+	/**
+	 * Accessor method for getting the layout this record uses.
+	 * 
+	 * @return Where each field's data is.
+	 */
+	DBFFieldLayout getLayout()
+	{
+		return layout;
+	}
+
+	/**
+	 * This method switches this record to the newLayout argument, moving
+	 * its data so that each field keeps what it had. This is how a record
+	 * made on its own starts sharing a table's layout.
+	 * 
+	 * @param newLayout The layout to use, which must have at least as
+	 * many fields as this record has data for.
+	 */
+	void setLayout(DBFFieldLayout newLayout)
+	{
+		if (newLayout == layout)
+			return;
+		int numSlots = newLayout.getNumSlots();
+		byte[] newKinds = new byte[numSlots];
+		long[] newNumbers = new long[numSlots];
+		Object[] newObjects = (objects == null) ? null : new Object[numSlots];
+		int numFields = Math.min(layout.getNumFields(), newLayout.getNumFields());
+		for (int i = 0; i < numFields; i++)
+		{
+			int oldSlot = layout.getSlot(i);
+			if (getKindAt(oldSlot) == NO_DATA)
+				continue;
+			int newSlot = newLayout.getSlot(i);
+			newKinds[newSlot] = kinds[oldSlot];
+			newNumbers[newSlot] = numbers[oldSlot];
+			if (objects != null)
+				newObjects[newSlot] = objects[oldSlot];
+		}
+		layout = newLayout;
+		kinds = newKinds;
+		numbers = newNumbers;
+		objects = newObjects;
+	}
+
+	/**
+	 * This method stops this record from sharing its layout, so that later
+	 * changes to the table's fields don't change it. Used when a record
+	 * is taken out of its table.
+	 */
+	void detachLayout()
+	{
+		layout = new DBFFieldLayout(layout);
+	}
+
+	/**
+	 * This method adds a field to the end of this record only. Note that
+	 * a table adds fields to all its records at once through their shared
+	 * layout, so it doesn't need to call this. No data is copied, the
+	 * new field just has no data until it's set.
 	 */
 	public void addField()
 	{
-		Object[] updatedArray = new Object[fieldData.length + 1];
-		for (int i = 0; i < fieldData.length; i++)
-			updatedArray[i] = fieldData[i];
-		fieldData = updatedArray;
+		detachLayout();
+		layout.addField();
 	}
 
 	/**
-	 * This method is used for updating this record whenever a field
-	 * is removed from the table. When that happens, we have to decrease our
-	 * array of data by one.
+	 * This method removes a field from this record only. Note that a
+	 * table removes fields from all its records at once through their
+	 * shared layout, so it doesn't need to call this.
 	 * 
 	 * @param index The index of the field to be removed from this record.
 	 */
 	public void removeField(int index)
 	{
 		// MAKE SURE IT'S A VALID FIELD INDEX
-		if ((fieldData.length > 0) && (index >= 0) && (index < fieldData.length))
+		if ((index >= 0) && (index < layout.getNumFields()))
 		{
-			Object[] updatedArray = new Object[fieldData.length-1];
-			
-			// IS IT THE FIRST FIELD?
-			if (index == 0)
-			{
-				for (int i = 1; i < fieldData.length; i++)
-					updatedArray[i-1] = fieldData[i];
-			}
-			// THE LAST FIELD?
-			else if (index == (fieldData.length-1))
-			{
-				for (int i = 0; i < fieldData.length-1; i++)
-					updatedArray[i] = fieldData[i];
-			}
-			// OR A MIDDLE FIELD?
-			else
-			{
-				for (int i = 0; i < index; i++)
-					updatedArray[i] = fieldData[i];
-				for (int i = index+1; i < fieldData.length; i++)
-					updatedArray[i-1] = fieldData[i];
-			}
-			fieldData = updatedArray;
+			detachLayout();
+			layout.removeField(index);
 		}
 	}
-}
\ No newline at end of file
+}
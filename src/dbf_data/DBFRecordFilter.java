@@ -0,0 +1,364 @@
+package dbf_data;
+
+import java.util.Set;
+
+/**
+ * Objects of this class decide which records to keep while a .dbf file is
+ * being loaded. A filter is checked against the raw bytes of each record
+ * before anything is decoded, so records that are filtered out never become
+ * Strings, Longs, Doubles, or DBFRecords.
+ * 
+ * Filters are made with the static methods of this class and may be
+ * combined using and, or, and not, for example:
+ * 
+ * 		DBFRecordFilter.and(DBFRecordFilter.greaterThan("ELEC_VOTES", 10),
+ * 							DBFRecordFilter.in("STATE_ABBR", abbreviations))
+ * 
+ * Note that text is compared after being trimmed, just like it is when
+ * loaded, and that blank numbers are treated as 0.
+ * 
+ * @author Aaron Meltzer
+ */
+public abstract class DBFRecordFilter
+{
+	// THE KINDS OF NUMBER COMPARISONS WE CAN DO
+	private static final int LESS = 0;
+	private static final int LESS_OR_EQUAL = 1;
+	private static final int EQUAL = 2;
+	private static final int GREATER_OR_EQUAL = 3;
+	private static final int GREATER = 4;
+
+	/**
+	 * This method makes a filter that keeps records whose numeric field
+	 * is greater than the value argument.
+	 * 
+	 * @param fieldName Name of an N field.
+	 * 
+	 * @param value Number to compare to.
+	 * 
+	 * @return The constructed filter.
+	 */
+	public static DBFRecordFilter greaterThan(String fieldName, double value)
+	{
+		return new NumberFilter(fieldName, GREATER, value);
+	}
+
+	/**
+	 * This method makes a filter that keeps records whose numeric field
+	 * is greater than or equal to the value argument.
+	 * 
+	 * @param fieldName Name of an N field.
+	 * 
+	 * @param value Number to compare to.
+	 * 
+	 * @return The constructed filter.
+	 */
+	public static DBFRecordFilter atLeast(String fieldName, double value)
+	{
+		return new NumberFilter(fieldName, GREATER_OR_EQUAL, value);
+	}
+
+	/**
+	 * This method makes a filter that keeps records whose numeric field
+	 * is less than the value argument.
+	 * 
+	 * @param fieldName Name of an N field.
+	 * 
+	 * @param value Number to compare to.
+	 * 
+	 * @return The constructed filter.
+	 */
+	public static DBFRecordFilter lessThan(String fieldName, double value)
+	{
+		return new NumberFilter(fieldName, LESS, value);
+	}
+
+	/**
+	 * This method makes a filter that keeps records whose numeric field
+	 * is less than or equal to the value argument.
+	 * 
+	 * @param fieldName Name of an N field.
+	 * 
+	 * @param value Number to compare to.
+	 * 
+	 * @return The constructed filter.
+	 */
+	public static DBFRecordFilter atMost(String fieldName, double value)
+	{
+		return new NumberFilter(fieldName, LESS_OR_EQUAL, value);
+	}
+
+	/**
+	 * This method makes a filter that keeps records whose numeric field
+	 * is equal to the value argument.
+	 * 
+	 * @param fieldName Name of an N field.
+	 * 
+	 * @param value Number to compare to.
+	 * 
+	 * @return The constructed filter.
+	 */
+	public static DBFRecordFilter equalTo(String fieldName, double value)
+	{
+		return new NumberFilter(fieldName, EQUAL, value);
+	}
+
+	/**
+	 * This method makes a filter that keeps records whose field, once
+	 * trimmed, is exactly the text argument.
+	 * 
+	 * @param fieldName Name of a field.
+	 * 
+	 * @param text Text to compare to.
+	 * 
+	 * @return The constructed filter.
+	 */
+	public static DBFRecordFilter equalTo(String fieldName, String text)
+	{
+		return new TextFilter(fieldName, new String[] { text });
+	}
+
+	/**
+	 * This method makes a filter that keeps records whose field, once
+	 * trimmed, is exactly one of the texts argument.
+	 * 
+	 * @param fieldName Name of a field.
+	 * 
+	 * @param texts All the text to compare to.
+	 * 
+	 * @return The constructed filter.
+	 */
+	public static DBFRecordFilter in(String fieldName, Set<String> texts)
+	{
+		return new TextFilter(fieldName, texts.toArray(new String[texts.size()]));
+	}
+
+	/**
+	 * This method makes a filter that keeps records kept by all of the
+	 * filters argument. Filters are checked in order, and once one turns
+	 * a record down the rest aren't checked.
+	 * 
+	 * @param filters Filters that must all keep a record.
+	 * 
+	 * @return The constructed filter.
+	 */
+	public static DBFRecordFilter and(DBFRecordFilter... filters)
+	{
+		return new CombinedFilter(filters, true);
+	}
+
+	/**
+	 * This method makes a filter that keeps records kept by any of the
+	 * filters argument. Filters are checked in order, and once one keeps
+	 * a record the rest aren't checked.
+	 * 
+	 * @param filters Filters of which at least one must keep a record.
+	 * 
+	 * @return The constructed filter.
+	 */
+	public static DBFRecordFilter or(DBFRecordFilter... filters)
+	{
+		return new CombinedFilter(filters, false);
+	}
+
+	/**
+	 * This method makes a filter that keeps the records the filter
+	 * argument turns down, and the other way around.
+	 * 
+	 * @param filter Filter to reverse.
+	 * 
+	 * @return The constructed filter.
+	 */
+	public static DBFRecordFilter not(final DBFRecordFilter filter)
+	{
+		return new DBFRecordFilter()
+		{
+			DBFRecordFilter bind(DBFTable fileHeader, int[] fieldOffsets)
+			{
+				return not(filter.bind(fileHeader, fieldOffsets));
+			}
+
+			boolean accept(byte[] bytes, int recordOffset)
+			{
+				return !filter.accept(bytes, recordOffset);
+			}
+		};
+	}
+
+	/**
+	 * This method makes a copy of this filter that knows where its fields
+	 * are inside the records of a particular file. Only bound filters
+	 * may be used to accept records.
+	 * 
+	 * @param fileHeader Table containing the header and all the fields of the file.
+	 * 
+	 * @param fieldOffsets Where each of the file's fields is inside a record.
+	 * 
+	 * @return A bound copy of this filter.
+	 * 
+	 * @throws IllegalArgumentException Thrown when the filter uses a field
+	 * the file doesn't have.
+	 */
+	abstract DBFRecordFilter bind(DBFTable fileHeader, int[] fieldOffsets);
+
+	/**
+	 * This method decides whether or not to keep a record.
+	 * 
+	 * @param bytes Raw .dbf data containing the record.
+	 * 
+	 * @param recordOffset Index of the record's first byte (the mystery byte).
+	 * 
+	 * @return true if the record should be kept, false otherwise.
+	 */
+	abstract boolean accept(byte[] bytes, int recordOffset);
+
+	/**
+	 * This helper method finds the index of a field in the file.
+	 * 
+	 * @param fileHeader Table containing all the fields of the file.
+	 * 
+	 * @param fieldName Name of the field to find.
+	 * 
+	 * @return The index of the field.
+	 * 
+	 * @throws IllegalArgumentException Thrown when there is no such field.
+	 */
+	private static int findField(DBFTable fileHeader, String fieldName)
+	{
+		int fieldIndex = fileHeader.getFieldIndex(fieldName);
+		if (fieldIndex < 0)
+			throw new IllegalArgumentException("No field named " + fieldName + " to filter on");
+		return fieldIndex;
+	}
+
+	/**
+	 * This filter compares a numeric field to a number.
+	 */
+	private static class NumberFilter extends DBFRecordFilter
+	{
+		private String fieldName;
+		private int comparison;
+		private double value;
+
+		// ONLY KNOWN ONCE BOUND
+		private int fieldOffset;
+		private int fieldLength;
+
+		public NumberFilter(String initFieldName, int initComparison, double initValue)
+		{
+			fieldName = initFieldName;
+			comparison = initComparison;
+			value = initValue;
+		}
+
+		DBFRecordFilter bind(DBFTable fileHeader, int[] fieldOffsets)
+		{
+			int fieldIndex = findField(fileHeader, fieldName);
+			NumberFilter bound = new NumberFilter(fieldName, comparison, value);
+			bound.fieldOffset = fieldOffsets[fieldIndex];
+			bound.fieldLength = fileHeader.getField(fieldIndex).getLength();
+			return bound;
+		}
+
+		boolean accept(byte[] bytes, int recordOffset)
+		{
+			double num = DBFFieldDecoder.parseDouble(bytes, recordOffset + fieldOffset, fieldLength);
+			switch (comparison)
+			{
+				case LESS:				return num < value;
+				case LESS_OR_EQUAL:		return num <= value;
+				case EQUAL:				return num == value;
+				case GREATER_OR_EQUAL:	return num >= value;
+				default:				return num > value;
+			}
+		}
+	}
+
+	/**
+	 * This filter compares a field's trimmed text to one or more pieces of text.
+	 */
+	private static class TextFilter extends DBFRecordFilter
+	{
+		private String fieldName;
+		private String[] texts;
+		private byte[][] textBytes;
+
+		// ONLY KNOWN ONCE BOUND
+		private int fieldOffset;
+		private int fieldLength;
+
+		public TextFilter(String initFieldName, String[] initTexts)
+		{
+			fieldName = initFieldName;
+			texts = initTexts;
+			textBytes = new byte[texts.length][];
+			for (int i = 0; i < texts.length; i++)
+				textBytes[i] = texts[i].trim().getBytes(DBFFieldDecoder.CHARSET);
+		}
+
+		DBFRecordFilter bind(DBFTable fileHeader, int[] fieldOffsets)
+		{
+			int fieldIndex = findField(fileHeader, fieldName);
+			TextFilter bound = new TextFilter(fieldName, texts);
+			bound.fieldOffset = fieldOffsets[fieldIndex];
+			bound.fieldLength = fileHeader.getField(fieldIndex).getLength();
+			return bound;
+		}
+
+		boolean accept(byte[] bytes, int recordOffset)
+		{
+			// TRIM THE FIELD WITHOUT COPYING IT
+			int start = DBFFieldDecoder.trimStart(bytes, recordOffset + fieldOffset, fieldLength);
+			int end = DBFFieldDecoder.trimEnd(bytes, start, recordOffset + fieldOffset + fieldLength);
+
+			// AND SEE IF IT MATCHES ANY OF OUR TEXT
+			int length = end - start;
+			for (int i = 0; i < textBytes.length; i++)
+			{
+				byte[] text = textBytes[i];
+				if (text.length == length)
+				{
+					int j = 0;
+					while ((j < length) && (text[j] == bytes[start + j]))
+						j++;
+					if (j == length)
+						return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * This filter combines other filters with and or or.
+	 */
+	private static class CombinedFilter extends DBFRecordFilter
+	{
+		private DBFRecordFilter[] filters;
+		private boolean all;
+
+		public CombinedFilter(DBFRecordFilter[] initFilters, boolean initAll)
+		{
+			filters = initFilters;
+			all = initAll;
+		}
+
+		DBFRecordFilter bind(DBFTable fileHeader, int[] fieldOffsets)
+		{
+			DBFRecordFilter[] boundFilters = new DBFRecordFilter[filters.length];
+			for (int i = 0; i < filters.length; i++)
+				boundFilters[i] = filters[i].bind(fileHeader, fieldOffsets);
+			return new CombinedFilter(boundFilters, all);
+		}
+
+		boolean accept(byte[] bytes, int recordOffset)
+		{
+			for (int i = 0; i < filters.length; i++)
+			{
+				if (filters[i].accept(bytes, recordOffset) != all)
+					return !all;
+			}
+			return all;
+		}
+	}
+}
@@ -0,0 +1,275 @@
+package dbf_data;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Objects of this class read the records of a .dbf file one at a time,
+ * in file order, without ever holding the whole table in memory. Only one
+ * block of records is buffered at a time, so a batch job can go through
+ * any number of files in constant memory.
+ * 
+ * If the stream was opened to reuse its record, next() fills in and returns
+ * the same DBFRecord every time, so nothing needs to be allocated per record
+ * besides the data itself. In that case a record must not be kept after the
+ * following call to next().
+ * 
+ * Use DBFFileIO.stream to open one of these, and close it when done.
+ * 
+ * @author Aaron Meltzer
+ */
+public class DBFRecordStream implements Iterator<DBFRecord>, Closeable
+{
+	// ROUGHLY HOW MANY BYTES OF RECORDS WE READ FROM THE FILE AT ONCE
+	static final int RECORD_BLOCK_SIZE = 1 << 20;
+
+	// THE FILE WE'RE READING
+	private FileChannel channel;
+
+	// THE HEADER AND FIELDS, BUT NO RECORDS
+	private DBFTable header;
+
+	// USED FOR DECODING THE RECORDS
+	private DBFFileIO dbfFileIO;
+
+	// WHERE EACH OF THE HEADER'S FIELDS IS INSIDE A RECORD
+	private int[] fieldOffsets;
+
+	// DECIDES WHICH RECORDS TO PROVIDE, IF THERE IS ONE
+	private DBFRecordFilter filter;
+	private boolean nextFound;
+
+	// THE BLOCK OF RECORDS CURRENTLY BEING GONE THROUGH
+	private ByteBuffer block;
+	private long firstRecordPosition;
+	private int recordLength;
+	private int recordsPerBlock;
+	private int recordsInBlock;
+	private int blockIndex;
+
+	// HOW FAR ALONG IN THE FILE WE ARE, COUNTING RECORDS FILTERED OUT
+	private int numRecords;
+	private int recordsRead;
+
+	// ONLY USED IF WE'RE REUSING THE SAME RECORD
+	private DBFRecord reusableRecord;
+
+	/**
+	 * This constructor sets up the stream to read the records of the file
+	 * the channel argument is reading. Note that the header argument must
+	 * describe the fields to be read, which may be only some of the fields
+	 * in the file.
+	 * 
+	 * @param initChannel Channel reading from the .dbf file.
+	 * 
+	 * @param initHeader Table containing the header and the fields to read.
+	 * 
+	 * @param initFirstRecordPosition Where the records start in the file.
+	 * 
+	 * @param initRecordLength How long each record in the file is.
+	 * 
+	 * @param initFieldOffsets Where each of the header's fields is inside a record.
+	 * 
+	 * @param initFilter Filter already bound to the file, or null to
+	 * provide all the records.
+	 * 
+	 * @param initDBFFileIO Used for decoding records.
+	 * 
+	 * @param reuseRecord If true, the same record is filled in and returned
+	 * by every call to next().
+	 * 
+	 * @throws IOException Thrown when the channel fails.
+	 */
+	DBFRecordStream(	FileChannel initChannel,
+						DBFTable initHeader,
+						long initFirstRecordPosition,
+						int initRecordLength,
+						int[] initFieldOffsets,
+						DBFRecordFilter initFilter,
+						DBFFileIO initDBFFileIO,
+						boolean reuseRecord) throws IOException
+	{
+		channel = initChannel;
+		header = initHeader;
+		firstRecordPosition = initFirstRecordPosition;
+		recordLength = initRecordLength;
+		fieldOffsets = initFieldOffsets;
+		filter = initFilter;
+		dbfFileIO = initDBFFileIO;
+
+		// HOW MANY RECORDS FIT IN A BLOCK?
+		numRecords = header.getNumberOfRecords();
+		recordsPerBlock = Math.max(1, Math.min(numRecords, RECORD_BLOCK_SIZE / recordLength));
+		block = ByteBuffer.allocate(recordsPerBlock * recordLength);
+
+		// THE RECORDS START RIGHT AFTER THE HEADER
+		channel.position(firstRecordPosition);
+		if (reuseRecord)
+			reusableRecord = new DBFRecord(header.getNumFields());
+	}
+
+	/**
+	 * Accessor method for getting the header of the file being read. Note
+	 * that the table has all the fields being read but none of the records,
+	 * and that its numberOfRecords counts records that may be filtered out.
+	 * 
+	 * @return A table containing the file's header and fields.
+	 */
+	public DBFTable getHeader()
+	{
+		return header;
+	}
+
+	/**
+	 * Tests to see if there are more records in the file. Note that if
+	 * there is a filter, this reads ahead until a record it keeps is found.
+	 * 
+	 * @return true if next() will provide another record, false otherwise.
+	 * 
+	 * @throws UncheckedIOException Thrown when reading the file fails or the
+	 * file ends before all the records its header promises.
+	 */
+	public boolean hasNext()
+	{
+		while (!nextFound)
+		{
+			if (recordsRead == numRecords)
+				return false;
+			if (blockIndex == recordsInBlock)
+				readBlock();
+
+			// SKIP RECORDS THE FILTER TURNS DOWN WITHOUT DECODING THEM
+			if ((filter == null) || filter.accept(block.array(), blockIndex * recordLength))
+				nextFound = true;
+			else
+			{
+				blockIndex++;
+				recordsRead++;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * This method decodes and returns the next record in the file, reading
+	 * more blocks of records first if need be.
+	 * 
+	 * @return The next record in the file.
+	 * 
+	 * @throws UncheckedIOException Thrown when reading the file fails or the
+	 * file ends before all the records its header promises.
+	 */
+	public DBFRecord next()
+	{
+		if (!hasNext())
+			throw new NoSuchElementException();
+
+		// DECODE THE RECORD RIGHT OUT OF THE BLOCK
+		int offset = blockIndex * recordLength;
+		DBFRecord record;
+		if (reusableRecord != null)
+			record = dbfFileIO.decodeRecord(block.array(), offset, header, fieldOffsets, reusableRecord);
+		else
+			record = dbfFileIO.decodeRecord(block.array(), offset, header, fieldOffsets);
+		blockIndex++;
+		recordsRead++;
+		nextFound = false;
+		return record;
+	}
+
+	/**
+	 * Records can't be removed from the file.
+	 */
+	public void remove()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * This method releases the file.
+	 * 
+	 * @throws IOException Thrown when closing the file fails.
+	 */
+	public void close() throws IOException
+	{
+		channel.close();
+	}
+
+	/**
+	 * This method reads and decodes a range of records from anywhere in the
+	 * file, keeping only those the filter keeps. Note that this doesn't
+	 * change where the stream is in the file and only uses positional reads,
+	 * so many threads may use it at once to decode different ranges.
+	 * 
+	 * @param firstRecord Index of the first record in the range.
+	 * 
+	 * @param count Number of records in the range.
+	 * 
+	 * @return The decoded records, in file order.
+	 * 
+	 * @throws IOException Thrown when reading the file fails or the
+	 * file ends before the end of the range.
+	 */
+	ArrayList<DBFRecord> readRecords(int firstRecord, int count) throws IOException
+	{
+		ArrayList<DBFRecord> records = new ArrayList<DBFRecord>(count);
+		int blockRecords = Math.max(1, Math.min(count, RECORD_BLOCK_SIZE / recordLength));
+		ByteBuffer rangeBlock = ByteBuffer.allocate(blockRecords * recordLength);
+		int done = 0;
+		while (done < count)
+		{
+			// READ AS MUCH OF THE RANGE AS FITS
+			int recordsToRead = Math.min(blockRecords, count - done);
+			long position = firstRecordPosition + ((long)(firstRecord + done) * recordLength);
+			rangeBlock.clear();
+			rangeBlock.limit(recordsToRead * recordLength);
+			while (rangeBlock.hasRemaining())
+			{
+				int bytesRead = channel.read(rangeBlock, position + rangeBlock.position());
+				if (bytesRead < 0)
+					throw new EOFException();
+			}
+
+			// AND DECODE IT
+			for (int i = 0; i < recordsToRead; i++)
+			{
+				int offset = i * recordLength;
+				if ((filter == null) || filter.accept(rangeBlock.array(), offset))
+					records.add(dbfFileIO.decodeRecord(rangeBlock.array(), offset, header, fieldOffsets));
+			}
+			done += recordsToRead;
+		}
+		return records;
+	}
+
+	/**
+	 * This helper method reads the next block of records from the file.
+	 */
+	private void readBlock()
+	{
+		recordsInBlock = Math.min(recordsPerBlock, numRecords - recordsRead);
+		block.clear();
+		block.limit(recordsInBlock * recordLength);
+		try
+		{
+			while (block.hasRemaining())
+			{
+				if (channel.read(block) < 0)
+					throw new EOFException();
+			}
+		}
+		catch(IOException ioe)
+		{
+			throw new UncheckedIOException(ioe);
+		}
+		block.flip();
+		blockIndex = 0;
+	}
+}
@@ -0,0 +1,718 @@
+package dbf_data;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class sorts the records of a table by a column of primitive keys
+ * that has been pulled out of the records once, rather than comparing the
+ * records themselves. Whole numbers are sorted with a radix sort, decimal
+ * numbers are first turned into whole numbers that sort the same way, and
+ * text is sorted with a merge sort. All the sorts are stable and none of
+ * them create an object per comparison. Sorts by several fields pack each
+ * field's ranks into one key, or compare the ranks if they don't fit.
+ * Text sorts and sorts by several fields can also be run in parallel on
+ * the common fork/join pool, which gives the same order.
+ * 
+ * Each sort returns an order, which lists the positions of the keys from
+ * smallest to largest. Keys that are equal keep their original order.
+ * 
+ * @author Aaron Meltzer
+ */
+public class DBFSorter
+{
+	// A RADIX SORT LOOKS AT A KEY THIS MANY BITS AT A TIME
+	private static final int RADIX_BITS = 8;
+	private static final int RADIX = 1 << RADIX_BITS;
+	private static final int RADIX_PASSES = 64 / RADIX_BITS;
+
+	// BELOW THIS SIZE AN INSERTION SORT IS FASTER
+	private static final int INSERTION_SORT_SIZE = 32;
+
+	// PARALLEL MERGE SORTS ARE SPLIT UP INTO PIECES OF AT MOST THIS SIZE
+	private static final int PARALLEL_TASK_SIZE = 1 << 13;
+
+	/**
+	 * Nothing to construct, everything here is static.
+	 */
+	private DBFSorter()
+	{
+	}
+
+	/**
+	 * This method turns the num argument into a long that sorts the same
+	 * way, so that decimal numbers can be radix sorted. Note that 0 and -0
+	 * become the same key.
+	 * 
+	 * @param num The number to turn into a key.
+	 * 
+	 * @return A key such that if a < b, toSortableLong(a) < toSortableLong(b).
+	 */
+	public static long toSortableLong(double num)
+	{
+		if (num == 0)
+			num = 0;
+		long bits = Double.doubleToLongBits(num);
+
+		// NEGATIVE NUMBERS SORT BACKWARDS, SO FLIP ALL BUT THE SIGN BIT
+		return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+	}
+
+	/**
+	 * This method sorts the keys argument with an LSD radix sort, moving
+	 * each key along with its position so that every pass reads memory
+	 * in order. Passes where all the keys have the same digit are skipped.
+	 * 
+	 * @param keys The keys to sort, which are left unchanged.
+	 * 
+	 * @return The positions of the keys, in increasing order of the keys.
+	 */
+	public static int[] sort(long[] keys)
+	{
+		int numKeys = keys.length;
+		int[] order = identity(numKeys);
+		if (numKeys < INSERTION_SORT_SIZE)
+		{
+			for (int i = 1; i < numKeys; i++)
+			{
+				int position = order[i];
+				int j = i;
+				while ((j > 0) && (keys[order[j - 1]] > keys[position]))
+				{
+					order[j] = order[j - 1];
+					j--;
+				}
+				order[j] = position;
+			}
+			return order;
+		}
+
+		// FLIPPING THE SIGN BIT MAKES SIGNED ORDER UNSIGNED ORDER, AND
+		// WE COUNT THE DIGITS FOR ALL THE PASSES WHILE WE'RE AT IT
+		long[] sortKeys = new long[numKeys];
+		int[] counts = new int[RADIX_PASSES * RADIX];
+		for (int i = 0; i < numKeys; i++)
+		{
+			long key = keys[i] ^ Long.MIN_VALUE;
+			sortKeys[i] = key;
+			for (int pass = 0; pass < RADIX_PASSES; pass++)
+				counts[(pass * RADIX) + (int)((key >>> (pass * RADIX_BITS)) & (RADIX - 1))]++;
+		}
+
+		int[] nextOrder = new int[numKeys];
+		long[] nextKeys = new long[numKeys];
+		for (int pass = 0; pass < RADIX_PASSES; pass++)
+		{
+			int shift = pass * RADIX_BITS;
+			int countsStart = pass * RADIX;
+
+			// IF EVERY KEY HAS THE SAME DIGIT THIS PASS WOULDN'T MOVE ANYTHING
+			int digit = (int)((sortKeys[0] >>> shift) & (RADIX - 1));
+			if (counts[countsStart + digit] == numKeys)
+				continue;
+
+			// TURN THE COUNTS INTO WHERE EACH DIGIT'S KEYS START
+			int start = 0;
+			for (int i = 0; i < RADIX; i++)
+			{
+				int count = counts[countsStart + i];
+				counts[countsStart + i] = start;
+				start += count;
+			}
+
+			// AND MOVE THE KEYS THERE, KEEPING EQUAL DIGITS IN ORDER
+			for (int i = 0; i < numKeys; i++)
+			{
+				long key = sortKeys[i];
+				int destination = counts[countsStart + (int)((key >>> shift) & (RADIX - 1))]++;
+				nextKeys[destination] = key;
+				nextOrder[destination] = order[i];
+			}
+			long[] tempKeys = sortKeys;
+			sortKeys = nextKeys;
+			nextKeys = tempKeys;
+			int[] tempOrder = order;
+			order = nextOrder;
+			nextOrder = tempOrder;
+		}
+		return order;
+	}
+
+	/**
+	 * This method sorts the keys argument with a merge sort, which only
+	 * ever moves positions around, never the text itself.
+	 * 
+	 * @param keys The keys to sort, none of which may be null. They are
+	 * left unchanged.
+	 * 
+	 * @return The positions of the keys, in increasing order of the keys.
+	 */
+	public static int[] sort(String[] keys)
+	{
+		return sort(keys, false);
+	}
+
+	/**
+	 * This method sorts the keys argument with a merge sort, like
+	 * sort(keys), but can sort the pieces on all the processors at once.
+	 * 
+	 * @param keys The keys to sort, none of which may be null. They are
+	 * left unchanged.
+	 * 
+	 * @param parallel If true, the sort runs on the common fork/join pool.
+	 * 
+	 * @return The positions of the keys, in increasing order of the keys.
+	 */
+	public static int[] sort(String[] keys, boolean parallel)
+	{
+		int[] order = identity(keys.length);
+		mergeSort(order, new int[keys.length], new TextComparator(keys), parallel);
+		return order;
+	}
+
+	/**
+	 * This method sorts by several fields at once. The first field decides
+	 * the order, the second breaks its ties, and so on, and positions that
+	 * tie on every field keep their original order. When all the ranks fit
+	 * in one long, which they do unless the fields have billions of
+	 * different values between them, they are packed together and radix
+	 * sorted, otherwise the ranks are merge sorted.
+	 * 
+	 * @param ranks For each field, the rank of each position as returned by
+	 * rank, so that comparing positions only compares ints.
+	 * 
+	 * @param increasing For each field, true to sort it in increasing
+	 * order, false for decreasing.
+	 * 
+	 * @return The positions, in sorted order.
+	 */
+	public static int[] sort(int[][] ranks, boolean[] increasing)
+	{
+		return sort(ranks, increasing, false);
+	}
+
+	/**
+	 * This method sorts by several fields at once, like sort(ranks,
+	 * increasing), but can use all the processors. In parallel, packed
+	 * ranks that leave room for the positions have each position put in
+	 * their low bits, and those longs are sorted with Arrays.parallelSort.
+	 * Since no two of them are equal the order is the same as a stable
+	 * sort's. Ranks that don't fit are merge sorted in parallel.
+	 * 
+	 * @param ranks For each field, the rank of each position as returned by
+	 * rank, so that comparing positions only compares ints.
+	 * 
+	 * @param increasing For each field, true to sort it in increasing
+	 * order, false for decreasing.
+	 * 
+	 * @param parallel If true, the sort runs on the common fork/join pool.
+	 * 
+	 * @return The positions, in sorted order.
+	 */
+	public static int[] sort(int[][] ranks, boolean[] increasing, boolean parallel)
+	{
+		int numKeys = (ranks.length == 0) ? 0 : ranks[0].length;
+
+		// IF ALL THE RANKS FIT IN ONE LONG, RADIX SORTING THOSE IS FASTEST
+		long[] packedKeys = pack(ranks, increasing);
+		if (packedKeys != null)
+		{
+			int positionBits = 32 - Integer.numberOfLeadingZeros(Math.max(0, numKeys - 1));
+			if (!parallel || (64 - Long.numberOfLeadingZeros(max(packedKeys)) + positionBits > 63))
+				return sort(packedKeys);
+
+			// THE POSITIONS BREAK TIES, SO THE SORT NEEDN'T BE STABLE
+			for (int i = 0; i < numKeys; i++)
+				packedKeys[i] = (packedKeys[i] << positionBits) | i;
+			Arrays.parallelSort(packedKeys);
+			int[] order = new int[numKeys];
+			int positionMask = (int)((1L << positionBits) - 1);
+			for (int i = 0; i < numKeys; i++)
+				order[i] = (int)packedKeys[i] & positionMask;
+			return order;
+		}
+
+		int[] order = identity(numKeys);
+		mergeSort(order, new int[numKeys], new RankComparator(ranks, increasing), parallel);
+		return order;
+	}
+
+	/**
+	 * This method finds the first count positions of what sort(keys) or,
+	 * for decreasing order, reverse(sort(keys), keys) would return, without
+	 * sorting the rest. It keeps the best count positions seen so far in a
+	 * heap, so it takes O(n log count) time.
+	 * 
+	 * @param keys The keys to sort, which are left unchanged.
+	 * 
+	 * @param increasing True for the smallest keys, false for the largest.
+	 * 
+	 * @param count How many positions to find.
+	 * 
+	 * @return The positions, in sorted order, with equal keys in their
+	 * original order.
+	 */
+	public static int[] top(long[] keys, boolean increasing, int count)
+	{
+		return top(keys.length, count, new LongComparator(keys, increasing));
+	}
+
+	/**
+	 * This method finds the first count positions of what sort(keys) or,
+	 * for decreasing order, reverse(sort(keys), keys) would return, without
+	 * sorting the rest.
+	 * 
+	 * @param keys The keys to sort, none of which may be null. They are
+	 * left unchanged.
+	 * 
+	 * @param increasing True for the smallest keys, false for the largest.
+	 * 
+	 * @param count How many positions to find.
+	 * 
+	 * @return The positions, in sorted order, with equal keys in their
+	 * original order.
+	 */
+	public static int[] top(String[] keys, boolean increasing, int count)
+	{
+		PositionComparator comparator = new TextComparator(keys);
+		if (!increasing)
+			comparator = new ReverseComparator(comparator);
+		return top(keys.length, count, comparator);
+	}
+
+	/**
+	 * This method ranks the keys argument, so that they can be compared as
+	 * ints when sorting by several fields. Equal keys get the same rank,
+	 * and smaller keys get smaller ranks.
+	 * 
+	 * @param order An order returned by sort(keys).
+	 * 
+	 * @param keys The keys that were sorted.
+	 * 
+	 * @return The rank of each key, by position.
+	 */
+	public static int[] rank(int[] order, long[] keys)
+	{
+		int[] ranks = new int[order.length];
+		int rank = 0;
+		for (int i = 1; i < order.length; i++)
+		{
+			if (keys[order[i]] != keys[order[i - 1]])
+				rank++;
+			ranks[order[i]] = rank;
+		}
+		return ranks;
+	}
+
+	/**
+	 * This method ranks the keys argument, so that they can be compared as
+	 * ints when sorting by several fields. Equal keys get the same rank,
+	 * and smaller keys get smaller ranks.
+	 * 
+	 * @param order An order returned by sort(keys).
+	 * 
+	 * @param keys The keys that were sorted.
+	 * 
+	 * @return The rank of each key, by position.
+	 */
+	public static int[] rank(int[] order, String[] keys)
+	{
+		int[] ranks = new int[order.length];
+		int rank = 0;
+		for (int i = 1; i < order.length; i++)
+		{
+			if (!keys[order[i]].equals(keys[order[i - 1]]))
+				rank++;
+			ranks[order[i]] = rank;
+		}
+		return ranks;
+	}
+
+	/**
+	 * This method turns an increasing order of the keys argument into a
+	 * decreasing one. Just reversing it would also reverse equal keys,
+	 * so each run of those is put back in its original order.
+	 * 
+	 * @param order An order returned by sort(keys).
+	 * 
+	 * @param keys The keys that were sorted.
+	 * 
+	 * @return The positions of the keys, in decreasing order of the keys.
+	 */
+	public static int[] reverse(int[] order, long[] keys)
+	{
+		int numKeys = order.length;
+		int[] reversed = new int[numKeys];
+		int runEnd = numKeys;
+		while (runEnd > 0)
+		{
+			int runStart = runEnd - 1;
+			long key = keys[order[runStart]];
+			while ((runStart > 0) && (keys[order[runStart - 1]] == key))
+				runStart--;
+			System.arraycopy(order, runStart, reversed, numKeys - runEnd, runEnd - runStart);
+			runEnd = runStart;
+		}
+		return reversed;
+	}
+
+	/**
+	 * This method turns an increasing order of the keys argument into a
+	 * decreasing one, keeping equal keys in their original order.
+	 * 
+	 * @param order An order returned by sort(keys).
+	 * 
+	 * @param keys The keys that were sorted.
+	 * 
+	 * @return The positions of the keys, in decreasing order of the keys.
+	 */
+	public static int[] reverse(int[] order, String[] keys)
+	{
+		int numKeys = order.length;
+		int[] reversed = new int[numKeys];
+		int runEnd = numKeys;
+		while (runEnd > 0)
+		{
+			int runStart = runEnd - 1;
+			String key = keys[order[runStart]];
+			while ((runStart > 0) && keys[order[runStart - 1]].equals(key))
+				runStart--;
+			System.arraycopy(order, runStart, reversed, numKeys - runEnd, runEnd - runStart);
+			runEnd = runStart;
+		}
+		return reversed;
+	}
+
+	/**
+	 * This helper method packs each position's ranks into one long, most
+	 * important field in the highest bits, with decreasing ranks flipped.
+	 * Returns null if they need more than 63 bits.
+	 */
+	private static long[] pack(int[][] ranks, boolean[] increasing)
+	{
+		int numKeys = (ranks.length == 0) ? 0 : ranks[0].length;
+		int[] maxRanks = new int[ranks.length];
+		int[] bits = new int[ranks.length];
+		int totalBits = 0;
+		for (int i = 0; i < ranks.length; i++)
+		{
+			int[] fieldRanks = ranks[i];
+			int maxRank = 0;
+			for (int j = 0; j < numKeys; j++)
+				maxRank = Math.max(maxRank, fieldRanks[j]);
+			maxRanks[i] = maxRank;
+			bits[i] = 32 - Integer.numberOfLeadingZeros(maxRank);
+			totalBits += bits[i];
+		}
+		if (totalBits > 63)
+			return null;
+
+		long[] packedKeys = new long[numKeys];
+		for (int i = 0; i < ranks.length; i++)
+		{
+			int[] fieldRanks = ranks[i];
+			int maxRank = maxRanks[i];
+			int shift = bits[i];
+			boolean flip = !increasing[i];
+			for (int j = 0; j < numKeys; j++)
+			{
+				int rank = flip ? (maxRank - fieldRanks[j]) : fieldRanks[j];
+				packedKeys[j] = (packedKeys[j] << shift) | rank;
+			}
+		}
+		return packedKeys;
+	}
+
+	/**
+	 * This helper method finds the largest of the keys argument, which
+	 * must not be negative, or 0 if there are none.
+	 */
+	private static long max(long[] keys)
+	{
+		long max = 0;
+		for (int i = 0; i < keys.length; i++)
+			max = Math.max(max, keys[i]);
+		return max;
+	}
+
+	/**
+	 * This helper method keeps the best count positions in a heap with
+	 * the worst of them on top, so that each position that doesn't make
+	 * the cut costs only one comparison. Ties go to the earlier position.
+	 */
+	private static int[] top(int numKeys, int count, PositionComparator comparator)
+	{
+		count = Math.max(0, Math.min(count, numKeys));
+		int[] heap = new int[count];
+		if (count == 0)
+			return heap;
+		for (int i = 0; i < count; i++)
+			heap[i] = i;
+		for (int i = (count / 2) - 1; i >= 0; i--)
+			siftDown(heap, i, count, comparator);
+
+		// ONLY POSITIONS BETTER THAN THE WORST ONE WE HAVE GET IN
+		for (int i = count; i < numKeys; i++)
+		{
+			if (comparator.compare(i, heap[0]) < 0)
+			{
+				heap[0] = i;
+				siftDown(heap, 0, count, comparator);
+			}
+		}
+
+		// TAKING THE WORST OFF THE TOP ONE AT A TIME LEAVES THEM IN ORDER
+		for (int size = count - 1; size > 0; size--)
+		{
+			int worst = heap[0];
+			heap[0] = heap[size];
+			heap[size] = worst;
+			siftDown(heap, 0, size, comparator);
+		}
+		return heap;
+	}
+
+	/**
+	 * This helper method moves the position at index down the heap until
+	 * nothing under it is worse.
+	 */
+	private static void siftDown(int[] heap, int index, int size, PositionComparator comparator)
+	{
+		int position = heap[index];
+		while (true)
+		{
+			int child = (2 * index) + 1;
+			if (child >= size)
+				break;
+			if (((child + 1) < size) && isWorse(heap[child + 1], heap[child], comparator))
+				child++;
+			if (!isWorse(heap[child], position, comparator))
+				break;
+			heap[index] = heap[child];
+			index = child;
+		}
+		heap[index] = position;
+	}
+
+	/**
+	 * This helper method tests to see if position1 would come after position2.
+	 */
+	private static boolean isWorse(int position1, int position2, PositionComparator comparator)
+	{
+		int result = comparator.compare(position1, position2);
+		if (result == 0)
+			return position1 > position2;
+		return result > 0;
+	}
+
+	/**
+	 * This helper method makes the order 0, 1, 2, ...
+	 */
+	private static int[] identity(int size)
+	{
+		int[] order = new int[size];
+		for (int i = 0; i < size; i++)
+			order[i] = i;
+		return order;
+	}
+
+	/**
+	 * This helper method merge sorts all the positions in order, on the
+	 * common fork/join pool if the parallel argument is true.
+	 */
+	private static void mergeSort(int[] order, int[] temp, PositionComparator comparator, boolean parallel)
+	{
+		if (parallel && (order.length > PARALLEL_TASK_SIZE))
+			ForkJoinPool.commonPool().invoke(new MergeSortTask(order, temp, 0, order.length, comparator));
+		else
+			mergeSort(order, temp, 0, order.length, comparator);
+	}
+
+	/**
+	 * This helper method merge sorts the positions from the from argument
+	 * up to but not including the to argument, using temp as scratch space.
+	 */
+	private static void mergeSort(int[] order, int[] temp, int from, int to, PositionComparator comparator)
+	{
+		if ((to - from) <= INSERTION_SORT_SIZE)
+		{
+			for (int i = from + 1; i < to; i++)
+			{
+				int position = order[i];
+				int j = i;
+				while ((j > from) && (comparator.compare(order[j - 1], position) > 0))
+				{
+					order[j] = order[j - 1];
+					j--;
+				}
+				order[j] = position;
+			}
+			return;
+		}
+
+		int middle = (from + to) >>> 1;
+		mergeSort(order, temp, from, middle, comparator);
+		mergeSort(order, temp, middle, to, comparator);
+		merge(order, temp, from, middle, to, comparator);
+	}
+
+	/**
+	 * This helper method merges the sorted positions from the from argument
+	 * up to the middle argument with those from middle up to the to argument.
+	 */
+	private static void merge(int[] order, int[] temp, int from, int middle, int to, PositionComparator comparator)
+	{
+		// ALREADY IN ORDER? THEN THERE'S NOTHING TO MERGE
+		if (comparator.compare(order[middle - 1], order[middle]) <= 0)
+			return;
+
+		// TAKING FROM THE LEFT ON TIES KEEPS THE SORT STABLE
+		System.arraycopy(order, from, temp, from, to - from);
+		int left = from;
+		int right = middle;
+		for (int i = from; i < to; i++)
+		{
+			if ((right >= to) || ((left < middle) && (comparator.compare(temp[left], temp[right]) <= 0)))
+				order[i] = temp[left++];
+			else
+				order[i] = temp[right++];
+		}
+	}
+
+	/**
+	 * This helper class merge sorts part of an order on a fork/join pool,
+	 * sorting the two halves at the same time and then merging them. The
+	 * halves use different parts of temp, so they never get in each
+	 * other's way.
+	 */
+	private static class MergeSortTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private int[] order;
+		private int[] temp;
+		private int from;
+		private int to;
+		private PositionComparator comparator;
+
+		MergeSortTask(int[] initOrder, int[] initTemp, int initFrom, int initTo, PositionComparator initComparator)
+		{
+			order = initOrder;
+			temp = initTemp;
+			from = initFrom;
+			to = initTo;
+			comparator = initComparator;
+		}
+
+		protected void compute()
+		{
+			// SMALL ENOUGH THAT SPLITTING IT UP WOULD COST MORE THAN IT SAVES
+			if ((to - from) <= PARALLEL_TASK_SIZE)
+			{
+				mergeSort(order, temp, from, to, comparator);
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(	new MergeSortTask(order, temp, from, middle, comparator),
+						new MergeSortTask(order, temp, middle, to, comparator));
+			merge(order, temp, from, middle, to, comparator);
+		}
+	}
+
+	/**
+	 * This helper class compares two positions by whatever is at them.
+	 */
+	private static abstract class PositionComparator
+	{
+		abstract int compare(int position1, int position2);
+	}
+
+	/**
+	 * This helper class compares positions by their text.
+	 */
+	private static class TextComparator extends PositionComparator
+	{
+		private String[] keys;
+
+		TextComparator(String[] initKeys)
+		{
+			keys = initKeys;
+		}
+
+		int compare(int position1, int position2)
+		{
+			return keys[position1].compareTo(keys[position2]);
+		}
+	}
+
+	/**
+	 * This helper class compares positions by their numbers.
+	 */
+	private static class LongComparator extends PositionComparator
+	{
+		private long[] keys;
+		private boolean increasing;
+
+		LongComparator(long[] initKeys, boolean initIncreasing)
+		{
+			keys = initKeys;
+			increasing = initIncreasing;
+		}
+
+		int compare(int position1, int position2)
+		{
+			long key1 = keys[position1];
+			long key2 = keys[position2];
+			if (key1 == key2)
+				return 0;
+			return ((key1 < key2) == increasing) ? -1 : 1;
+		}
+	}
+
+	/**
+	 * This helper class compares positions the opposite way of another comparator.
+	 */
+	private static class ReverseComparator extends PositionComparator
+	{
+		private PositionComparator comparator;
+
+		ReverseComparator(PositionComparator initComparator)
+		{
+			comparator = initComparator;
+		}
+
+		int compare(int position1, int position2)
+		{
+			return comparator.compare(position2, position1);
+		}
+	}
+
+	/**
+	 * This helper class compares positions by their ranks for one field
+	 * after another, and by the positions themselves when all those tie.
+	 */
+	private static class RankComparator extends PositionComparator
+	{
+		private int[][] ranks;
+		private boolean[] increasing;
+
+		RankComparator(int[][] initRanks, boolean[] initIncreasing)
+		{
+			ranks = initRanks;
+			increasing = initIncreasing;
+		}
+
+		int compare(int position1, int position2)
+		{
+			for (int i = 0; i < ranks.length; i++)
+			{
+				int rank1 = ranks[i][position1];
+				int rank2 = ranks[i][position2];
+				if (rank1 != rank2)
+					return ((rank1 < rank2) == increasing[i]) ? -1 : 1;
+			}
+			return (position1 < position2) ? -1 : ((position1 == position2) ? 0 : 1);
+		}
+	}
+}
@@ -1,12 +1,17 @@
 package dbf_data;
 
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Objects of this class would be used to store all of the data
@@ -19,6 +24,50 @@ public class DBFTable
 {
 	// COLUMN HEADERS
 	private ArrayList<DBFField> fields;
+
+	// WHERE EACH COLUMN'S DATA IS INSIDE THE RECORDS, SHARED BY ALL OF
+	// THEM SO THAT ADDING OR REMOVING A COLUMN DOESN'T TOUCH EVERY RECORD
+	private DBFFieldLayout layout;
+
+	// FOR FINDING COLUMNS BY NAME, BUILT WHEN FIRST NEEDED AND THROWN
+	// AWAY WHENEVER THE COLUMNS CHANGE, WHICH ALSO BUMPS THE VERSION
+	private HashMap<String,Integer> fieldIndexes;
+	private int fieldsVersion;
+
+	// KEYS MADE BY generateKey ARE THIS PREFIX AND A NUMBER, AND THE
+	// NUMBER OF THE NEXT ONE IS REMEMBERED, OR 0 IF WE HAVEN'T LOOKED YET
+	private static final String GENERATED_KEY_PREFIX = "Key";
+	private static final String GENERATED_KEY_END = "Kez";
+	private long nextKeyNumber;
+
+	// HOW MANY BATCHES WE'RE IN, AND IF THE TABLE STATS NEED
+	// UPDATING WHEN THE LAST ONE IS COMMITTED
+	private int batchDepth;
+	private boolean statsOutOfDate;
+
+	// SECONDARY INDEXES, BY THE NAME OF THE FIELD THEY'RE ON
+	private HashMap<String,DBFIndex> indexes;
+
+	// THE RECORDS AND THEIR KEYS IN KEY ORDER, FOR GETTING A ROW BY ITS
+	// POSITION. WHEN A RECORD IS ADDED OR REMOVED THE ONES AFTER IT ARE
+	// MOVED OVER, SO THE ARRAYS MAY HAVE ROOM PAST THE LAST OF THE ROWS
+	private DBFRecord[] rowsInKeyOrder;
+	private Comparable<?>[] keysInKeyOrder;
+	private int rowCount;
+
+	// FOR SORTING, FOR EACH FIELD SORTED SO FAR, WHERE EACH ROW GOES IN
+	// INCREASING AND DECREASING ORDER AND, FOR SORTS BY SEVERAL FIELDS,
+	// EACH ROW'S RANK. A FIELD'S ORDERS ARE THROWN AWAY WHEN ITS DATA
+	// CHANGES, AND THEY ALL ARE WHEN RECORDS OR FIELDS ARE ADDED OR REMOVED
+	private int[][] increasingOrders;
+	private int[][] decreasingOrders;
+	private int[][] fieldRanks;
+
+	// PAGES THAT END PAST THIS FRACTION OF THE RECORDS GET A FULL SORT
+	private static final int PARTIAL_SORT_FRACTION = 8;
+
+	// TABLES WITH AT LEAST THIS MANY RECORDS ARE SORTED IN PARALLEL
+	static final int SORT_PARALLEL_THRESHOLD = 1 << 16;
 	
 	// ROW DATA
 	private TreeMap<Comparable,DBFRecord> records;
@@ -47,7 +96,9 @@ public class DBFTable
 	{
 		// INITIALIZE OUR DATA STRUCTURES
 		fields = new ArrayList<DBFField>();
+		layout = new DBFFieldLayout(0);
 		records = new TreeMap<Comparable,DBFRecord>();
+		indexes = new HashMap<String,DBFIndex>();
 		
 		// BY DEFAULT THE KEY INDEX IS 0
 		keyIndex = 0;
@@ -72,7 +123,9 @@ public class DBFTable
 	public int 					getNumFields()						{ return fields.size();					}
 	public int 					getNumRecords()						{ return records.size();				}
 	public ArrayList 			getArrayList()						{ return data;							}
-	//Added one accessor to retrieve the treemap
+	//Added one accessor to retrieve the treemap. NOTE THAT RECORDS PUT IN OR
+	//TAKEN OUT OF IT DIRECTLY BYPASS THE INDEXES AND THE ROW POSITIONS, SO
+	//USE addRecord INSTEAD
 	public TreeMap<Comparable,DBFRecord> getTree()					{ return records; 						}
 	/**
 	 * This accessor method gets the index of a specific column with a header
@@ -82,23 +135,101 @@ public class DBFTable
 	 * @param testFieldName The name of the field that we want the index of.
 	 * 
 	 * @return The index of the testFieldName per the order of fields in the table. Note
-	 * that fields are not sorted alphabetically, so this uses the rather unfortunate
-	 * sequential search.
+	 * that this uses a hash table of the field names, which is built the first
+	 * time it's needed and again whenever fields are added or removed. If a
+	 * field is renamed after being added, call update().
 	 */
 	public int getFieldIndex(String testFieldName)
 	{
-		// BOO, SEQUENTIAL SEARCH
-		int index = 0;
-		Iterator<DBFField> fieldsIt = fieldsIterator();
-		while(fieldsIt.hasNext())
+		if (fieldIndexes == null)
+			buildFieldIndexes();
+		Integer index = fieldIndexes.get(testFieldName);
+		if (index == null)
+			return -1;
+
+		// MAKE SURE NOBODY RENAMED IT OUT FROM UNDER US
+		if (!fields.get(index).getName().equals(testFieldName))
 		{
-			DBFField field = fieldsIt.next();
-			if (field.getName().equals(testFieldName))
-				return index;
-			else
-				index++;
+			buildFieldIndexes();
+			index = fieldIndexes.get(testFieldName);
+			if (index == null)
+				return -1;
 		}
-		return -1;
+		return index;
+	}
+
+	/**
+	 * This method resolves the field with the fieldName argument once, so
+	 * that its data can then be gotten from any number of records without
+	 * looking the field up by name again.
+	 * 
+	 * @param fieldName The name of the field.
+	 * 
+	 * @return A reference to the field.
+	 * 
+	 * @throws IllegalArgumentException Thrown when there is no such field.
+	 */
+	public DBFFieldRef getFieldRef(String fieldName)
+	{
+		return new DBFFieldRef(this, fieldName);
+	}
+
+	/**
+	 * Accessor method for getting a number that changes whenever fields
+	 * are added to or removed from this table, so that field references
+	 * can tell when their index may be out of date.
+	 * 
+	 * @return The current version of the fields.
+	 */
+	int getFieldsVersion()
+	{
+		return fieldsVersion;
+	}
+
+	/**
+	 * This helper method rebuilds the hash table of field names. If two
+	 * fields share a name, the first one wins, as with a sequential search.
+	 */
+	private void buildFieldIndexes()
+	{
+		HashMap<String,Integer> newFieldIndexes = new HashMap<String,Integer>();
+		for (int i = fields.size() - 1; i >= 0; i--)
+			newFieldIndexes.put(fields.get(i).getName(), i);
+		fieldIndexes = newFieldIndexes;
+	}
+
+	/**
+	 * This helper method throws away the hash table of field names, which
+	 * must be done whenever the fields change.
+	 */
+	private void fieldsChanged()
+	{
+		fieldIndexes = null;
+		fieldsVersion++;
+		sortOrdersChanged();
+	}
+
+	/**
+	 * This helper method throws away the rows in key order, and so all the
+	 * sort orders too, for when the rows can't be patched.
+	 */
+	private void rowsChanged()
+	{
+		rowsInKeyOrder = null;
+		keysInKeyOrder = null;
+		rowCount = 0;
+		sortOrdersChanged();
+	}
+
+	/**
+	 * This helper method throws away all the sort orders, which must be
+	 * done whenever records or fields are added or removed.
+	 */
+	private void sortOrdersChanged()
+	{
+		increasingOrders = null;
+		decreasingOrders = null;
+		fieldRanks = null;
 	}
 	
 	/**
@@ -125,6 +256,284 @@ public class DBFTable
 	{
 		return records.get(key);
 	}
+
+	/**
+	 * Accessor method for getting the record at the rowIndex argument
+	 * position, counting in key order. Note that the first call puts all
+	 * the records in an array, after which every call is constant time.
+	 * Adding or removing a record after that costs O(n) to move the rows
+	 * after it over, which is a quick array copy.
+	 * 
+	 * @param rowIndex Position of the record, from 0 to getNumRecords() - 1.
+	 * 
+	 * @return The record at that position.
+	 * 
+	 * @throws IndexOutOfBoundsException Thrown when there is no such row.
+	 */
+	public DBFRecord getRecordAt(int rowIndex)
+	{
+		checkRowIndex(rowIndex);
+		return rowsInKeyOrder[rowIndex];
+	}
+
+	/**
+	 * Accessor method for getting the key of the record at the rowIndex
+	 * argument position, counting in key order, like getRecordAt.
+	 * 
+	 * @param rowIndex Position of the record, from 0 to getNumRecords() - 1.
+	 * 
+	 * @return The key the record at that position is stored under.
+	 * 
+	 * @throws IndexOutOfBoundsException Thrown when there is no such row.
+	 */
+	public Comparable<?> getKeyAt(int rowIndex)
+	{
+		checkRowIndex(rowIndex);
+		return keysInKeyOrder[rowIndex];
+	}
+
+	/**
+	 * This helper method makes sure we have the rows in key order and that
+	 * there is a row at the rowIndex argument position.
+	 */
+	private void checkRowIndex(int rowIndex)
+	{
+		prepareRows();
+		if ((rowIndex < 0) || (rowIndex >= rowCount))
+			throw new IndexOutOfBoundsException("Row " + rowIndex + " of " + rowCount);
+	}
+
+	/**
+	 * This helper method puts the records and their keys in arrays in key
+	 * order, if they aren't already there.
+	 */
+	private void prepareRows()
+	{
+		if (rowsInKeyOrder != null)
+			return;
+		DBFRecord[] rows = new DBFRecord[records.size()];
+		Comparable<?>[] keys = new Comparable<?>[rows.length];
+		Iterator<? extends Map.Entry<?,DBFRecord>> it = records.entrySet().iterator();
+		for (int i = 0; i < rows.length; i++)
+		{
+			Map.Entry<?,DBFRecord> entry = it.next();
+			keys[i] = (Comparable<?>)entry.getKey();
+			rows[i] = entry.getValue();
+		}
+		rowsInKeyOrder = rows;
+		keysInKeyOrder = keys;
+		rowCount = rows.length;
+	}
+
+	/**
+	 * This helper method puts the record argument, just added under the key
+	 * argument, in its place in the rows in key order, moving the rows after
+	 * it over. A record that replaced another takes its place.
+	 */
+	private void rowAdded(Comparable<?> key, DBFRecord record)
+	{
+		int position = Arrays.binarySearch(keysInKeyOrder, 0, rowCount, key);
+		if (position < 0)
+		{
+			position = -(position + 1);
+			if (rowCount == rowsInKeyOrder.length)
+			{
+				int capacity = rowCount + (rowCount >> 1) + 1;
+				rowsInKeyOrder = Arrays.copyOf(rowsInKeyOrder, capacity);
+				keysInKeyOrder = Arrays.copyOf(keysInKeyOrder, capacity);
+			}
+			System.arraycopy(rowsInKeyOrder, position, rowsInKeyOrder, position + 1, rowCount - position);
+			System.arraycopy(keysInKeyOrder, position, keysInKeyOrder, position + 1, rowCount - position);
+			keysInKeyOrder[position] = key;
+			rowCount++;
+		}
+		rowsInKeyOrder[position] = record;
+
+		// THE SORT ORDERS ARE BY ROW POSITION, SO THEY HAVE TO GO
+		sortOrdersChanged();
+	}
+
+	/**
+	 * This helper method takes the row with the key argument out of the rows
+	 * in key order, moving the rows after it back.
+	 */
+	private void rowRemoved(Comparable<?> key)
+	{
+		int position = Arrays.binarySearch(keysInKeyOrder, 0, rowCount, key);
+		if (position < 0)
+		{
+			rowsChanged();
+			return;
+		}
+		rowCount--;
+		System.arraycopy(rowsInKeyOrder, position + 1, rowsInKeyOrder, position, rowCount - position);
+		System.arraycopy(keysInKeyOrder, position + 1, keysInKeyOrder, position, rowCount - position);
+		rowsInKeyOrder[rowCount] = null;
+		keysInKeyOrder[rowCount] = null;
+		sortOrdersChanged();
+	}
+		
+	/**
+	 * This method builds a hash index on the field with the fieldName
+	 * argument, after which records can be found by that field's data in
+	 * constant time using the index. The table keeps the index current as
+	 * records are added, removed, and changed.
+	 * 
+	 * @param fieldName The name of the field to index.
+	 * 
+	 * @return The new index, which replaces any index already on the field.
+	 * 
+	 * @throws IllegalArgumentException Thrown when there is no such field.
+	 */
+	public DBFIndex createIndex(String fieldName)
+	{
+		DBFIndex index = new DBFIndex(getFieldRef(fieldName), false);
+		indexes.put(fieldName, index);
+		return index;
+	}
+
+	/**
+	 * This method builds a sorted index on the field with the fieldName
+	 * argument, like createIndex, except that the index can also find
+	 * all the records with data in a range.
+	 * 
+	 * @param fieldName The name of the field to index.
+	 * 
+	 * @return The new index, which replaces any index already on the field.
+	 * 
+	 * @throws IllegalArgumentException Thrown when there is no such field.
+	 */
+	public DBFIndex createSortedIndex(String fieldName)
+	{
+		DBFIndex index = new DBFIndex(getFieldRef(fieldName), true);
+		indexes.put(fieldName, index);
+		return index;
+	}
+
+	/**
+	 * Accessor method for getting the index on the field with the fieldName argument.
+	 * 
+	 * @param fieldName The name of the indexed field.
+	 * 
+	 * @return The index, or null if the field isn't indexed.
+	 */
+	public DBFIndex getIndex(String fieldName)
+	{
+		return indexes.get(fieldName);
+	}
+
+	/**
+	 * This method throws away the index on the field with the fieldName
+	 * argument, so that it no longer has to be kept current.
+	 * 
+	 * @param fieldName The name of the indexed field.
+	 */
+	public void dropIndex(String fieldName)
+	{
+		indexes.remove(fieldName);
+	}
+
+	/**
+	 * This method is called by a record of this table whenever its data
+	 * changes through setData, so that the indexes can be kept current
+	 * and the field's sort orders thrown away.
+	 * 
+	 * @param record The record that changed.
+	 * 
+	 * @param fieldIndex Index of the field that changed.
+	 * 
+	 * @param oldData The field's data before the change.
+	 * 
+	 * @param newData The field's data now.
+	 */
+	void dataChanged(DBFRecord record, int fieldIndex, Object oldData, Object newData)
+	{
+		dataChanged(fieldIndex);
+		if (indexes.isEmpty())
+			return;
+		Iterator<DBFIndex> it = indexes.values().iterator();
+		while (it.hasNext())
+			it.next().dataChanged(record, fieldIndex, oldData, newData);
+	}
+
+	/**
+	 * This method is called by a record of this table whenever its data
+	 * changes for a field that isn't indexed, which only has to throw away
+	 * the field's sort orders, so no data has to be boxed to call it.
+	 * 
+	 * @param fieldIndex Index of the field that changed.
+	 */
+	void dataChanged(int fieldIndex)
+	{
+		// ONLY THIS FIELD'S SORT ORDERS ARE OUT OF DATE
+		if ((increasingOrders != null) && (fieldIndex < increasingOrders.length))
+		{
+			increasingOrders[fieldIndex] = null;
+			decreasingOrders[fieldIndex] = null;
+			fieldRanks[fieldIndex] = null;
+		}
+	}
+
+	/**
+	 * This method tells if any index is on the field at fieldIndex, in which
+	 * case changes to it must go through the dataChanged that takes the data.
+	 * 
+	 * @param fieldIndex Index of the field.
+	 * 
+	 * @return true if the field is indexed, false otherwise.
+	 */
+	boolean isIndexed(int fieldIndex)
+	{
+		if (indexes.isEmpty())
+			return false;
+		Iterator<DBFIndex> it = indexes.values().iterator();
+		while (it.hasNext())
+		{
+			if (it.next().getFieldIndex() == fieldIndex)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * This helper method takes ownership of a record that was just added
+	 * under the key argument, has it share our layout, and puts it in the
+	 * row positions and all the indexes. Note that it invalidates the sort
+	 * orders.
+	 */
+	private void recordAdded(Comparable<?> key, DBFRecord record)
+	{
+		record.setLayout(layout);
+		record.setOwner(this);
+		if (rowsInKeyOrder != null)
+			rowAdded(key, record);
+		if (indexes.isEmpty())
+			return;
+		Iterator<DBFIndex> it = indexes.values().iterator();
+		while (it.hasNext())
+			it.next().add(record);
+	}
+
+	/**
+	 * This helper method takes a record that was just removed from under
+	 * the key argument out of the row positions and all the indexes, gives
+	 * up ownership of it, and gives it its own layout. Note that it
+	 * invalidates the sort orders.
+	 */
+	private void recordRemoved(Comparable<?> key, DBFRecord record)
+	{
+		if (record.getOwner() == this)
+			record.setOwner(null);
+		if (record.getLayout() == layout)
+			record.detachLayout();
+		if (rowsInKeyOrder != null)
+			rowRemoved(key);
+		if (indexes.isEmpty())
+			return;
+		Iterator<DBFIndex> it = indexes.values().iterator();
+		while (it.hasNext())
+			it.next().remove(record);
+	}
 		
 	// ITERATOR METHODS - THESE WILL RETURN ITERATORS FOR GOING THROUGH ALL THE DATA IN THE TABLE
 	public Iterator<DBFField> 	fieldsIterator() 	{ return fields.iterator(); 	}
@@ -204,12 +613,51 @@ public class DBFTable
 	
 	// TABLE BUILDING METHODS - THESE SHOULD ONLY BE USED FOR LOADING FROM A FILE
 	// SINCE THEY DO NOT UPDATE ALL RELATED VARIABLES
-	public void addField(DBFField dbf)		{ fields.add(dbf);		}
+	public void addField(DBFField dbf)		{ fields.add(dbf);	layout.addField();	fieldsChanged();	}
 	public void addRecord(Comparable key, DBFRecord dbr)		
 	{ 
-		records.put(key, dbr);
+		DBFRecord replaced = records.put(key, dbr);
+		if (replaced != null)
+			recordRemoved(key, replaced);
+		recordAdded(key, dbr);
 	}	
 
+	/**
+	 * This method adds all the records in the recordsToAdd argument, each
+	 * under its own key, like calling addRecord for each one in order.
+	 * 
+	 * @param recordsToAdd The records to add. If two have the same key, the
+	 * later one wins.
+	 */
+	public void addRecords(Collection<DBFRecord> recordsToAdd)
+	{
+		Iterator<DBFRecord> it = recordsToAdd.iterator();
+		while (it.hasNext())
+		{
+			DBFRecord record = it.next();
+			addRecord(getKey(record), record);
+		}
+	}
+
+	/**
+	 * This method adds all the records in the recordsToAdd argument under
+	 * the keys they're mapped to, like calling addRecord for each one.
+	 * 
+	 * @param recordsToAdd The records to add, by key. The keys must be
+	 * Comparable, as with addRecord.
+	 * 
+	 * @throws ClassCastException Thrown when a key isn't Comparable.
+	 */
+	public void addRecords(Map<?,? extends DBFRecord> recordsToAdd)
+	{
+		Iterator<? extends Map.Entry<?,? extends DBFRecord>> it = recordsToAdd.entrySet().iterator();
+		while (it.hasNext())
+		{
+			Map.Entry<?,? extends DBFRecord> entry = it.next();
+			addRecord((Comparable<?>)entry.getKey(), entry.getValue());
+		}
+	}
+
 	// TABLE MODIFICATION METHODS //
 	
 	/**
@@ -231,19 +679,23 @@ public class DBFTable
 		fieldToAdd.setType(fieldType);
 		fieldToAdd.setLength(length);
 		
-		// PUT IT IN THE TABLE
+		// PUT IT IN THE TABLE, WHICH ALSO PUTS IT IN ALL THE RECORDS
+		// SINCE THEY SHARE OUR LAYOUT
 		addField(fieldToAdd);
 		
-		// AND UPDATE ALL THE RECORDS
-		Iterator<DBFRecord> it = recordsIterator();
-		while(it.hasNext())
-		{
-			DBFRecord rec = it.next();
-			rec.addField();
-		}
-		
 		// UPDATE TABLE STATS
-		update();
+		statsChanged();
+	}
+
+	/**
+	 * This method makes a new record with no data that shares this table's
+	 * layout, ready to be filled in and added to the table.
+	 * 
+	 * @return The new record.
+	 */
+	DBFRecord createRecord()
+	{
+		return new DBFRecord(layout);
 	}
 
 	/**
@@ -254,17 +706,21 @@ public class DBFTable
 	{
 		// ADD A NEW EMPTY RECORD, IT WILL BE FILLED IN
 		// BY THE USER LATER
-		DBFRecord recordToAdd = new DBFRecord(fields.size());
+		DBFRecord recordToAdd = createRecord();
 		String key = generateKey();
 		records.put(key, recordToAdd);
+		recordAdded(key, recordToAdd);
 		numberOfRecords++;
 		
 		// UPDATE THE TABLE STATS
-		update();
+		statsChanged();
 	}
 	
 	/**
-	 * Generates and returns a key that's not in use.
+	 * Generates and returns a key that's not in use. Keys are handed out
+	 * in order, Key1, Key2, and so on, starting after the highest one
+	 * already in the table, and a key is never handed out twice, even if
+	 * its record is removed. So each call usually costs one lookup.
 	 * 
 	 * @return A key that is not in use. This would be used for adding records
 	 * to the table with placeholders where the real key has not yet been
@@ -272,10 +728,44 @@ public class DBFTable
 	 */
 	public String generateKey()
 	{
-		int counter = 1;
-		while (records.containsKey("Key" + counter))
-			counter++;
-		return "Key" + counter;
+		// THE FIRST TIME, START AFTER ANY GENERATED KEYS ALREADY HERE
+		if (nextKeyNumber == 0)
+			nextKeyNumber = findNextKeyNumber();
+
+		// ONLY KEYS ADDED WITH addRecord COULD BE IN THE WAY
+		String key = GENERATED_KEY_PREFIX + nextKeyNumber++;
+		while (records.containsKey(key))
+			key = GENERATED_KEY_PREFIX + nextKeyNumber++;
+		return key;
+	}
+
+	/**
+	 * This helper method finds the number after the highest generated key
+	 * in the table. Since the keys are sorted, only the ones that start
+	 * with the prefix have to be looked at.
+	 */
+	private long findNextKeyNumber()
+	{
+		long highest = 0;
+		if (records.isEmpty() || !(records.firstKey() instanceof String))
+			return highest + 1;
+		Iterator<?> it = records.subMap(GENERATED_KEY_PREFIX, GENERATED_KEY_END).keySet().iterator();
+		while (it.hasNext())
+		{
+			String key = (String)it.next();
+			long number = 0;
+			int i = GENERATED_KEY_PREFIX.length();
+			for (; (i < key.length()) && (number < Integer.MAX_VALUE); i++)
+			{
+				char c = key.charAt(i);
+				if ((c < '0') || (c > '9'))
+					break;
+				number = (number * 10) + (c - '0');
+			}
+			if ((i == key.length()) && (number > highest))
+				highest = number;
+		}
+		return highest + 1;
 	}
 	
 	/**
@@ -289,12 +779,14 @@ public class DBFTable
 		// MAKE SURE IT'S A LEGAL TABLE INDEX
 		if ((recordIndex >= 0) && (recordIndex < records.size()))
 		{
-			// TAKE IT OUT OF THE TABLE
-			records.remove(recordIndex);
+			// TAKE IT OUT OF THE TABLE, COUNTING IN KEY ORDER
+			Comparable<?> key = getKeyAt(recordIndex);
+			DBFRecord recordToRemove = records.remove(key);
+			recordRemoved(key, recordToRemove);
 			numberOfRecords--;
 			
 			// AND UPDATE THE TABLE STATS
-			update();
+			statsChanged();
 		}
 	}
 
@@ -305,11 +797,53 @@ public class DBFTable
 	 */
 	public void update()
 	{
+		fieldsChanged();
 		lastModifiedDate = new GregorianCalendar();
 		updateDataRecordLength();
 		updatePositionOfFirstDataRecorded();
 	}
 
+	/**
+	 * This method starts a batch of changes. Until the batch is committed,
+	 * adding and removing records and fields doesn't update the table stats,
+	 * which is done once by commitBatch instead. Batches may be nested, in
+	 * which case only committing the outermost one updates the stats.
+	 */
+	public void beginBatch()
+	{
+		batchDepth++;
+	}
+
+	/**
+	 * This method ends the batch started by the last call to beginBatch,
+	 * updating the table stats if anything changed during it.
+	 * 
+	 * @throws IllegalStateException Thrown when no batch was started.
+	 */
+	public void commitBatch()
+	{
+		if (batchDepth == 0)
+			throw new IllegalStateException("No batch to commit");
+		batchDepth--;
+		if ((batchDepth == 0) && statsOutOfDate)
+		{
+			statsOutOfDate = false;
+			update();
+		}
+	}
+
+	/**
+	 * This helper method updates the table stats now, or when the batch is
+	 * committed if we're in one.
+	 */
+	private void statsChanged()
+	{
+		if (batchDepth > 0)
+			statsOutOfDate = true;
+		else
+			update();
+	}
+
 	/**
 	 * This method determines the length of all the fields in the 
 	 * table and sums these values, then using this result to set
@@ -351,26 +885,27 @@ public class DBFTable
 		// ONLY DO THIS IF IT'S A LEGAL INDEX
 		if ((fieldIndex >= 0) && (fieldIndex < fields.size()))
 		{
-			// REMOVE THE FIELD
-			fields.remove(fieldIndex);
+			// REMOVE THE FIELD, AND ANY INDEX ON IT
+			DBFField removedField = fields.remove(fieldIndex);
+			fieldsChanged();
+			indexes.remove(removedField.getName());
 			
-			// GO THROUGH ALL THE RECORDS AND UPDATE THEM
-			Iterator<DBFRecord> it = recordsIterator();
-			while(it.hasNext())
-			{
-				DBFRecord recordToUpdate = it.next();
-				recordToUpdate.removeField(fieldIndex);
-			}
+			// THE RECORDS SHARE OUR LAYOUT, SO THIS UPDATES ALL OF THEM
+			layout.removeField(fieldIndex);
 			
 			// AND UPDATE THE TABLE STATS
-			update();
+			statsChanged();
 		}
 	}
 
 	/**
 	 * This method sorts the records in this table according to the
 	 * provided field name and in increasing order if the increasing
-	 * argument is true, in decreasing order otherwise.
+	 * argument is true, in decreasing order otherwise. Records with
+	 * equal data stay in key order either way.
+	 * 
+	 * Note that the order is remembered, so sorting again by the same
+	 * field costs no comparisons unless that field's data has changed.
 	 * 
 	 * @param fieldName Field by which to use as the criteria for sorting
 	 * the records.
@@ -381,135 +916,324 @@ public class DBFTable
 	public ArrayList sortRecords(String fieldName, boolean increasing)
 	{
 		// FIND THE SORTING CRITERIA INDEX
-		int fieldIndex = -1;
-		int index = 0;
-		while ((fieldIndex < 0) && (index < fields.size()))
-		{
-			DBFField testField = fields.get(index);
-			if (testField.getName().equals(fieldName))
-				fieldIndex = index;
-			index++;
-		}
+		int fieldIndex = getFieldIndex(fieldName);
 
 		// ONLY SORT IF IT'S FOUND
-		data = new ArrayList();
+		ArrayList<DBFRecord> sorted = new ArrayList<DBFRecord>();
 		if (fieldIndex >= 0)
 		{
-			DBFRowSorter rowSorter = new DBFRowSorter(fieldIndex, increasing);
-			Comparable theKey = records.firstKey();
-			for(int i=0; theKey!=null; i++){
-				data.add(records.get(theKey));
-				theKey = records.higherKey(theKey);
-			}
-			Collections.sort(data, rowSorter);
-			// UPDATE THE TABLE STATS
-			update();
+			int[] order = getSortOrder(fieldIndex, increasing);
+			sorted.ensureCapacity(order.length);
+			for (int i = 0; i < order.length; i++)
+				sorted.add(rowsInKeyOrder[order[i]]);
 		}
+		data = sorted;
 		return data;
-	}	
+	}
 
 	/**
-	 * This helper class performs all comparisons between
-	 * objects during table sorting.
+	 * This method sorts the records in this table by several fields, as in
+	 * WINNER increasing, then ELEC_VOTES decreasing, then STATE_NAME
+	 * increasing. Records that tie on one field are ordered by the next,
+	 * and records that tie on all of them stay in key order. Tables with
+	 * at least SORT_PARALLEL_THRESHOLD records are sorted in parallel.
+	 * 
+	 * @param fieldNames Fields to sort by, most important first.
+	 * 
+	 * @param increasing For each field, true to sort it in increasing
+	 * order, false for decreasing.
+	 * 
+	 * @return The records, in sorted order.
+	 * 
+	 * @throws IllegalArgumentException Thrown when there is no field with
+	 * one of the names, or when the arrays are empty or different lengths.
 	 */
-	private class DBFRowSorter implements Comparator
+	public ArrayList<DBFRecord> sortRecords(String[] fieldNames, boolean[] increasing)
 	{
-		// THESE DICTATE THE SORTING CRITERIA
-		private int sortingIndex;
-		private boolean increasing;
+		if (fieldNames.length == 0)
+			throw new IllegalArgumentException("No fields to sort by");
+		if (fieldNames.length != increasing.length)
+			throw new IllegalArgumentException(fieldNames.length + " fields but " + increasing.length + " directions");
+		int[] fieldIndexes = new int[fieldNames.length];
+		for (int i = 0; i < fieldNames.length; i++)
+			fieldIndexes[i] = getFieldRef(fieldNames[i]).getIndex();
 
-		/**
-		 * This constructor sets up this object for sorting. Note that
-		 * we'll construct a temp one each time we sort, so I didn't 
-		 * provide any mutator methods.
-		 * 
-		 * @param initSortingIndex Field index to use for sorting criteria.
-		 * 
-		 * @param initIncreasing Used to initialize whether this will be for
-		 * increasing sorting or not.
-		 */
-		public DBFRowSorter(int initSortingIndex, boolean initIncreasing)
-		{
-			sortingIndex = initSortingIndex;
-			increasing = initIncreasing;
-		}
-		
-		/**
-		 * Here's the method that does the real work. Ito compares the
-		 * two Object arguments and returns 0 if they are equivalent. -1 if
-		 * obj1 is "smaller" than obj2, and 1 otherwise.
-		 * 
-		 * @param obj1 The first record being compared.
-		 * 
-		 * @param obj2 The second record being compared.
-		 */
-		public int compare(Object obj1, Object obj2) 
-		{
-			DBFRecord record1 = (DBFRecord)obj1;
-			DBFRecord record2 = (DBFRecord)obj2;
-			int result;
+		int[] order = getSortOrder(fieldIndexes, increasing);
+		ArrayList<DBFRecord> sorted = new ArrayList<DBFRecord>(order.length);
+		for (int i = 0; i < order.length; i++)
+			sorted.add(rowsInKeyOrder[order[i]]);
+		data = sorted;
+		return sorted;
+	}
+
+	/**
+	 * This method gets the first numRecords records of what sortRecords
+	 * would return, as in the top 10 states by ELEC_VOTES, without sorting
+	 * the whole table.
+	 * 
+	 * @param fieldName Field to sort by.
+	 * 
+	 * @param increasing If true, the records with the smallest data come
+	 * first. Otherwise the ones with the largest data do.
+	 * 
+	 * @param numRecords How many records to get.
+	 * 
+	 * @return The records, in sorted order. There will be fewer than
+	 * numRecords if the table doesn't have that many.
+	 * 
+	 * @throws IllegalArgumentException Thrown when there is no such field.
+	 */
+	public ArrayList<DBFRecord> getTopRecords(String fieldName, boolean increasing, int numRecords)
+	{
+		return getSortedRecords(fieldName, increasing, 0, numRecords);
+	}
+
+	/**
+	 * This method gets one page of what sortRecords would return, the
+	 * numRecords records starting at firstIndex. If the table already
+	 * remembers the sort order it's used, otherwise pages near the start
+	 * are found with a partial sort, which costs O(n log k) for the first
+	 * k records rather than a full sort.
+	 * 
+	 * @param fieldName Field to sort by.
+	 * 
+	 * @param increasing If true, increasing order, decreasing otherwise.
+	 * 
+	 * @param firstIndex Where the page starts in the sorted order.
+	 * 
+	 * @param numRecords How many records are on a page.
+	 * 
+	 * @return The records on the page, in sorted order. The last page may
+	 * be short, and pages past the end are empty.
+	 * 
+	 * @throws IllegalArgumentException Thrown when there is no such field,
+	 * or when firstIndex or numRecords is negative.
+	 */
+	public ArrayList<DBFRecord> getSortedRecords(String fieldName, boolean increasing, int firstIndex, int numRecords)
+	{
+		if ((firstIndex < 0) || (numRecords < 0))
+			throw new IllegalArgumentException("No page of " + numRecords + " records at " + firstIndex);
+		int fieldIndex = getFieldRef(fieldName).getIndex();
+
+		// AN EMPTY PAGE, OR ONE PAST THE END, NEEDS NO SORTING AT ALL
+		if ((numRecords == 0) || (firstIndex >= records.size()))
+			return new ArrayList<DBFRecord>();
+		prepareSortOrders();
+		int numRows = rowCount;
+		int endIndex = firstIndex + Math.min(numRecords, Math.max(0, numRows - firstIndex));
+
+		// USE A REMEMBERED ORDER IF WE HAVE ONE, OR IF THE PAGE IS FAR
+		// ENOUGH IN THAT A FULL SORT WOULD BE AS CHEAP
+		int[] order;
+		if ((increasingOrders[fieldIndex] != null) || (endIndex > (numRows / PARTIAL_SORT_FRACTION)))
+			order = getSortOrder(fieldIndex, increasing);
+		else if (isTextColumn(fieldIndex))
+			order = DBFSorter.top(getTextKeys(fieldIndex), increasing, endIndex);
+		else
+			order = DBFSorter.top(getNumberKeys(fieldIndex), increasing, endIndex);
+
+		ArrayList<DBFRecord> page = new ArrayList<DBFRecord>(Math.max(0, endIndex - firstIndex));
+		for (int i = firstIndex; i < endIndex; i++)
+			page.add(rowsInKeyOrder[order[i]]);
+		return page;
+	}
+
+	/**
+	 * This method gets where each record goes when the records are sorted
+	 * by several fields. Each field's remembered order is used to rank its
+	 * data, so the sort itself only ever compares ints. The ranks are
+	 * remembered along with the orders. Big tables rank all the fields at
+	 * the same time and sort the ranks in parallel.
+	 * 
+	 * @param fieldIndexes Indexes of the fields to sort by, most important first.
+	 * 
+	 * @param increasing For each field, true for increasing order.
+	 * 
+	 * @return The positions, in key order, of the records in sorted order.
+	 */
+	int[] getSortOrder(int[] fieldIndexes, boolean[] increasing)
+	{
+		// ONE FIELD IS JUST A NORMAL, REMEMBERED SORT
+		if (fieldIndexes.length == 1)
+			return getSortOrder(fieldIndexes[0], increasing[0]);
 
-			// ARE WE COMPARING TEXT?
-			if (record1.getData(sortingIndex) instanceof String)
+		prepareSortOrders();
+		boolean parallel = isSortedInParallel();
+		if (parallel)
+		{
+			// EACH FIELD NOT RANKED YET GETS ITS OWN TASK, JUST ONCE
+			ArrayList<RankTask> tasks = new ArrayList<RankTask>();
+			for (int i = 0; i < fieldIndexes.length; i++)
 			{
-				String text1 = (String)record1.getData(sortingIndex);
-				String text2 = (String)record2.getData(sortingIndex);
-				result = text2.compareTo(text1);
+				int fieldIndex = fieldIndexes[i];
+				boolean queued = false;
+				for (int j = 0; j < tasks.size(); j++)
+					queued |= tasks.get(j).fieldIndex == fieldIndex;
+				if ((fieldRanks[fieldIndex] == null) && !queued)
+					tasks.add(new RankTask(fieldIndex));
 			}
-			// TREAT EVERYTHING ELSE AS A DOUBLE
+			ForkJoinTask.invokeAll(tasks);
+		}
+
+		int[][] ranks = new int[fieldIndexes.length][];
+		for (int i = 0; i < fieldIndexes.length; i++)
+			ranks[i] = getFieldRanks(fieldIndexes[i]);
+		return DBFSorter.sort(ranks, increasing, parallel);
+	}
+
+	/**
+	 * This helper method gets the rank of each record's data for the field
+	 * at fieldIndex, by position in key order, computing it only if it
+	 * isn't remembered. The sort orders must already be prepared.
+	 */
+	private int[] getFieldRanks(int fieldIndex)
+	{
+		if (fieldRanks[fieldIndex] == null)
+		{
+			int[] increasingOrder = getSortOrder(fieldIndex, true);
+			if (isTextColumn(fieldIndex))
+				fieldRanks[fieldIndex] = DBFSorter.rank(increasingOrder, getTextKeys(fieldIndex));
 			else
+				fieldRanks[fieldIndex] = DBFSorter.rank(increasingOrder, getNumberKeys(fieldIndex));
+		}
+		return fieldRanks[fieldIndex];
+	}
+
+	/**
+	 * This helper method tests to see if there are enough rows, and
+	 * enough processors, that sorting them in parallel is worth it.
+	 */
+	private boolean isSortedInParallel()
+	{
+		return (rowCount >= SORT_PARALLEL_THRESHOLD) && (ForkJoinPool.getCommonPoolParallelism() > 1);
+	}
+
+	/**
+	 * This method gets where each record goes when the records are sorted
+	 * by the field at fieldIndex, computing it only if it isn't remembered
+	 * from an earlier sort.
+	 * 
+	 * @param fieldIndex Index of the field to sort by.
+	 * 
+	 * @param increasing If true, increasing order, decreasing otherwise.
+	 * 
+	 * @return The positions, in key order, of the records in sorted order.
+	 * Note that this is the remembered array, so it must not be changed.
+	 */
+	int[] getSortOrder(int fieldIndex, boolean increasing)
+	{
+		prepareSortOrders();
+		int[] increasingOrder = increasingOrders[fieldIndex];
+		if (increasingOrder == null)
+		{
+			increasingOrder = sortIncreasing(fieldIndex);
+			increasingOrders[fieldIndex] = increasingOrder;
+		}
+		if (increasing)
+			return increasingOrder;
+
+		int[] decreasingOrder = decreasingOrders[fieldIndex];
+		if (decreasingOrder == null)
+		{
+			decreasingOrder = reverse(increasingOrder, fieldIndex);
+			decreasingOrders[fieldIndex] = decreasingOrder;
+		}
+		return decreasingOrder;
+	}
+
+	/**
+	 * This helper method gets the records in key order, and room to
+	 * remember sort orders for each field, if they aren't already there.
+	 */
+	private void prepareSortOrders()
+	{
+		prepareRows();
+		if (increasingOrders == null)
+		{
+			increasingOrders = new int[fields.size()][];
+			decreasingOrders = new int[fields.size()][];
+			fieldRanks = new int[fields.size()][];
+		}
+	}
+
+	/**
+	 * This helper method sorts the positions of the records by the field
+	 * at fieldIndex. The sort is stable, so equal records stay in key order.
+	 */
+	private int[] sortIncreasing(int fieldIndex)
+	{
+		if (isTextColumn(fieldIndex))
+			return DBFSorter.sort(getTextKeys(fieldIndex), isSortedInParallel());
+		return DBFSorter.sort(getNumberKeys(fieldIndex));
+	}
+
+	/**
+	 * This helper method turns the increasingOrder argument into the
+	 * decreasing order, keeping records with equal data in key order.
+	 */
+	private int[] reverse(int[] increasingOrder, int fieldIndex)
+	{
+		if (isTextColumn(fieldIndex))
+			return DBFSorter.reverse(increasingOrder, getTextKeys(fieldIndex));
+		return DBFSorter.reverse(increasingOrder, getNumberKeys(fieldIndex));
+	}
+
+	/**
+	 * This helper method tests to see if the field at fieldIndex holds
+	 * text in any record, in which case it's sorted as text.
+	 */
+	private boolean isTextColumn(int fieldIndex)
+	{
+		for (int i = 0; i < rowCount; i++)
+		{
+			DBFRecord record = rowsInKeyOrder[i];
+			if ((record.getKind(fieldIndex) == DBFRecord.OBJECT_DATA) && (record.getData(fieldIndex) instanceof String))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * This helper method pulls the text out of the field at fieldIndex
+	 * for every record, in key order. Missing text sorts as empty.
+	 */
+	private String[] getTextKeys(int fieldIndex)
+	{
+		String[] keys = new String[rowCount];
+		for (int i = 0; i < keys.length; i++)
+		{
+			String text = rowsInKeyOrder[i].getString(fieldIndex);
+			keys[i] = (text == null) ? "" : text;
+		}
+		return keys;
+	}
+
+	/**
+	 * This helper method pulls the numbers out of the field at fieldIndex
+	 * for every record, in key order. Missing numbers sort as 0. If any of
+	 * them is a Double they are all turned into sortable longs, otherwise
+	 * the Longs are used as they are.
+	 */
+	private long[] getNumberKeys(int fieldIndex)
+	{
+		long[] keys = new long[rowCount];
+		boolean decimal = false;
+		for (int i = 0; i < keys.length; i++)
+		{
+			DBFRecord record = rowsInKeyOrder[i];
+			if (record.getKind(fieldIndex) == DBFRecord.DOUBLE_DATA)
 			{
-				Double double1 = 0.0;
-				Double double2 = 0.0;
-				if (record1.getData(sortingIndex) instanceof Double)
-				{
-					double1 = (Double)record1.getData(sortingIndex);
-					if (record2.getData(sortingIndex) instanceof Long)
-					{
-						Long tempLong = (Long)record2.getData(sortingIndex);
-						double2 = (double)tempLong;
-					}
-					else
-					{
-						double2 = (Double)record2.getData(sortingIndex);						
-					}
-				}
-				// EVEN IF IT'S ACTUALLY A LONG, IT MAKES COMPARISONS EASIER
-				else
-				{
-					Long tempLong = (Long)record1.getData(sortingIndex);
-					if (tempLong == null)
-						double1 = new Double(0);
-					else
-						double1 = (double)tempLong;
-					if (record2.getData(sortingIndex) instanceof Long)
-					{
-						tempLong = (Long)record2.getData(sortingIndex);
-						if (tempLong == null)
-							double2 = new Double(0);
-						else
-							double2 = (double)tempLong;
-					}
-					else
-					{
-						Double tempDouble = (Double)record2.getData(sortingIndex);
-						if (tempDouble == null)
-							double2 = new Double(0);
-						else
-							double2 = (Double)record2.getData(sortingIndex);
-					}
-				}
-				if (double1 == null) double1 = 0.0;
-				if (double2 == null) double2 = 0.0;
-				if (double1 < double2) result = 1;
-				else if (double1 > double2) result = -1;
-				else result = 0;
+				decimal = true;
+				break;
 			}
-			// IF INCREASING, JUST REVERSE THE RESULTS
-			if (increasing)
-				result *= -1;
-			return result;
-		}	
+			keys[i] = record.getLong(fieldIndex);
+		}
+		if (decimal)
+		{
+			for (int i = 0; i < keys.length; i++)
+				keys[i] = DBFSorter.toSortableLong(rowsInKeyOrder[i].getDouble(fieldIndex));
+		}
+		return keys;
 	}
 
 	/**
@@ -525,24 +1249,35 @@ public class DBFTable
 	 */
 	public boolean containsNamedColumn(String testName)
 	{
-		// SEARCH THROUGH ALL THE FIELDS
-		Iterator<DBFField> it = fieldsIterator();
-		while (it.hasNext())
+		return getFieldIndex(testName) >= 0;
+	}
+	
+	/**
+	 * This helper class sorts and ranks one field's data on a fork/join
+	 * pool, so that a sort by several fields can rank them all at once.
+	 * Each task only fills in its own field's remembered order and ranks.
+	 */
+	private class RankTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private int fieldIndex;
+
+		RankTask(int initFieldIndex)
 		{
-			DBFField field = it.next();
-			if (field.getName().equals(testName))
-			{
-				return true;
-			}
+			fieldIndex = initFieldIndex;
+		}
+
+		protected void compute()
+		{
+			getFieldRanks(fieldIndex);
 		}
-		return false;
 	}
-	
+
 	/**
 	 * Used for comparing two records to enable sorting of records. Note
-	 * that this is redundant since we already have DBFRowSorter. This simply
-	 * provides an implementation using record keys, where DBFRowSorter uses
-	 * a more flexible implementation.
+	 * that sortRecords doesn't use this. This simply provides an
+	 * implementation using record keys, where sortRecords sorts by any field.
 	 */
 	class RecordComparator implements Comparator
 	{
@@ -0,0 +1,366 @@
+package dbf_data;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Objects of this class provide read access to a .dbf file without loading
+ * its records into memory. The record section of the file is memory mapped
+ * and, since every record has the same length, record i can always be found
+ * at positionOfFirstDataRecorded + (i * dataRecordLength). Records and
+ * individual fields are only decoded when they are asked for, so opening a
+ * file only costs as much as reading its header, and memory use stays flat
+ * no matter how big the file is.
+ * 
+ * Everything is decoded straight out of the mapping with absolute gets,
+ * so reading a number allocates nothing and reading text only makes its
+ * String. Note that records are provided in file order, not key order as
+ * with DBFTable. Use DBFFileIO.mapDBF to open one of these tables.
+ * 
+ * @author Aaron Meltzer
+ */
+public class MappedDBFTable implements Closeable
+{
+	// A SINGLE MAPPING CAN'T BE LARGER THAN THIS, SO BIG FILES NEED SEVERAL
+	private static final int MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+
+	// THE FILE WE'VE MAPPED
+	private FileChannel channel;
+
+	// THE HEADER AND FIELDS, BUT NO RECORDS
+	private DBFTable header;
+
+	// USED FOR DECODING THE RECORDS, THE SAME WAY THE LOADERS DO
+	private DBFFileIO dbfFileIO;
+
+	// WHERE EACH FIELD STARTS INSIDE A RECORD
+	private int[] fieldOffsets;
+
+	// THE MAPPED RECORD SECTION, SPLIT INTO SEGMENTS OF WHOLE RECORDS
+	private MappedByteBuffer[] segments;
+	private int recordLength;
+	private int recordsPerSegment;
+	private int numRecords;
+
+	// ONLY CHECKED IF SOMEONE ASKS FOR A RECORD BY KEY. IF THE FILE IS IN
+	// KEY ORDER THE KEYS ARE BINARY SEARCHED, OTHERWISE THEY'RE HASHED
+	private boolean keyOrderChecked;
+	private boolean inKeyOrder;
+	private HashMap<Object,Integer> keyIndexes;
+
+	/**
+	 * This constructor maps the record section of the file the channel
+	 * argument is reading. Note that the header argument must already
+	 * have been loaded from the same file.
+	 * 
+	 * @param initChannel Channel reading from the .dbf file.
+	 * 
+	 * @param initHeader Table containing the file's header and fields.
+	 * 
+	 * @param initFieldOffsets Where each field is inside a record.
+	 * 
+	 * @param initDBFFileIO Used for decoding records.
+	 * 
+	 * @throws IOException Thrown when the mapping fails, or when the file
+	 * is shorter than its header says it is.
+	 */
+	MappedDBFTable(FileChannel initChannel, DBFTable initHeader, int[] initFieldOffsets, DBFFileIO initDBFFileIO) throws IOException
+	{
+		channel = initChannel;
+		header = initHeader;
+		dbfFileIO = initDBFFileIO;
+
+		fieldOffsets = initFieldOffsets;
+		recordLength = dbfFileIO.getRecordLength(header);
+		numRecords = header.getNumberOfRecords();
+
+		// MAKE SURE ALL THE RECORDS ARE REALLY THERE
+		long firstRecordPosition = header.getPositionOfFirstDataRecorded() & 0xffff;
+		long recordsSize = (long)numRecords * recordLength;
+		if (firstRecordPosition + recordsSize > channel.size())
+			throw new EOFException();
+
+		// AND MAP THEM, A SEGMENT AT A TIME
+		recordsPerSegment = Math.max(1, MAX_SEGMENT_SIZE / recordLength);
+		int numSegments = (int)((numRecords + (long)recordsPerSegment - 1) / recordsPerSegment);
+		segments = new MappedByteBuffer[numSegments];
+		for (int i = 0; i < numSegments; i++)
+		{
+			long firstRecord = (long)i * recordsPerSegment;
+			long segmentRecords = Math.min(recordsPerSegment, numRecords - firstRecord);
+			segments[i] = channel.map(	FileChannel.MapMode.READ_ONLY,
+										firstRecordPosition + (firstRecord * recordLength),
+										segmentRecords * recordLength);
+		}
+	}
+
+	// ACCESSOR METHODS
+	public DBFTable		getHeader()				{ return header;				}
+	public DBFField		getField(int index)		{ return header.getField(index);}
+	public int			getNumFields()			{ return header.getNumFields();	}
+	public int			getNumRecords()			{ return numRecords;			}
+	public int			getKeyIndex()			{ return header.getKeyIndex();	}
+	public int			getFieldIndex(String testFieldName)	{ return header.getFieldIndex(testFieldName);	}
+	public Iterator<DBFField>	fieldsIterator()	{ return header.fieldsIterator();	}
+
+	/**
+	 * Accessor method for getting the record at the recordIndex argument
+	 * location in the file. Note that the whole record is decoded each
+	 * time this is called, nothing is cached.
+	 * 
+	 * @param recordIndex Index of the record in the file.
+	 * 
+	 * @return A newly decoded record.
+	 */
+	public DBFRecord getRecord(int recordIndex)
+	{
+		return dbfFileIO.decodeRecord(getSegment(recordIndex), getPosition(recordIndex), header, fieldOffsets, header.createRecord());
+	}
+
+	/**
+	 * Accessor method for getting the record with the key argument. The
+	 * first time this is called the keys are checked to see if the file is
+	 * in key order. If it is, every lookup is a binary search through the
+	 * file, which decodes only a few keys and needs no memory. If it isn't,
+	 * all the keys are decoded and remembered, after which finding a
+	 * record is cheap.
+	 * 
+	 * @param key The key for the record we are interested in.
+	 * 
+	 * @return The newly decoded record corresponding to the provided key
+	 * argument, or null if there is no such record.
+	 */
+	public DBFRecord getRecord(Comparable<?> key)
+	{
+		if (!keyOrderChecked)
+		{
+			inKeyOrder = isInKeyOrder();
+			keyOrderChecked = true;
+		}
+
+		int recordIndex;
+		if (inKeyOrder)
+			recordIndex = findKey(key);
+		else
+		{
+			if (keyIndexes == null)
+			{
+				keyIndexes = new HashMap<Object,Integer>();
+				for (int i = 0; i < numRecords; i++)
+					keyIndexes.put(getData(i, header.getKeyIndex()), i);
+			}
+			Integer foundIndex = keyIndexes.get(key);
+			recordIndex = (foundIndex == null) ? -1 : foundIndex.intValue();
+		}
+		if (recordIndex < 0)
+			return null;
+		return getRecord(recordIndex);
+	}
+
+	/**
+	 * Accessor method for getting a single piece of data from the file. Only
+	 * the requested field is decoded, the rest of the record is never touched.
+	 * 
+	 * @param recordIndex Index of the record in the file.
+	 * 
+	 * @param fieldIndex Index of the field we want the data for.
+	 * 
+	 * @return The newly decoded data, a String, Long, or Double.
+	 */
+	public Object getData(int recordIndex, int fieldIndex)
+	{
+		DBFField field = header.getField(fieldIndex);
+		if (field.getType() == DBFFieldType.C)
+			return getString(recordIndex, fieldIndex);
+		MappedByteBuffer segment = getSegment(recordIndex);
+		int offset = getPosition(recordIndex) + fieldOffsets[fieldIndex];
+		if (DBFFieldDecoder.isDecimal(segment, offset, field.getLength()))
+			return Double.valueOf(DBFFieldDecoder.parseDouble(segment, offset, field.getLength()));
+		return Long.valueOf(DBFFieldDecoder.parseLong(segment, offset, field.getLength()));
+	}
+
+	/**
+	 * Accessor method for getting a single piece of data from the file as
+	 * a whole number, without making any objects. Decimal numbers are truncated.
+	 * 
+	 * @param recordIndex Index of the record in the file.
+	 * 
+	 * @param fieldIndex Index of the field we want the data for, which
+	 * must be an N field.
+	 * 
+	 * @return The number, or 0 if the field is blank.
+	 */
+	public long getLong(int recordIndex, int fieldIndex)
+	{
+		MappedByteBuffer segment = getSegment(recordIndex);
+		int offset = getPosition(recordIndex) + fieldOffsets[fieldIndex];
+		int length = header.getField(fieldIndex).getLength();
+		if (DBFFieldDecoder.isDecimal(segment, offset, length))
+			return (long)DBFFieldDecoder.parseDouble(segment, offset, length);
+		return DBFFieldDecoder.parseLong(segment, offset, length);
+	}
+
+	/**
+	 * Accessor method for getting a single piece of data from the file as
+	 * a decimal number, without making any objects.
+	 * 
+	 * @param recordIndex Index of the record in the file.
+	 * 
+	 * @param fieldIndex Index of the field we want the data for, which
+	 * must be an N field.
+	 * 
+	 * @return The number, or 0 if the field is blank.
+	 */
+	public double getDouble(int recordIndex, int fieldIndex)
+	{
+		MappedByteBuffer segment = getSegment(recordIndex);
+		int offset = getPosition(recordIndex) + fieldOffsets[fieldIndex];
+		return DBFFieldDecoder.parseDouble(segment, offset, header.getField(fieldIndex).getLength());
+	}
+
+	/**
+	 * Accessor method for getting a single piece of data from the file as
+	 * trimmed text, making only the String.
+	 * 
+	 * @param recordIndex Index of the record in the file.
+	 * 
+	 * @param fieldIndex Index of the field we want the data for.
+	 * 
+	 * @return The trimmed text.
+	 */
+	public String getString(int recordIndex, int fieldIndex)
+	{
+		MappedByteBuffer segment = getSegment(recordIndex);
+		int offset = getPosition(recordIndex) + fieldOffsets[fieldIndex];
+		return DBFFieldDecoder.decodeString(segment, offset, header.getField(fieldIndex).getLength());
+	}
+
+	/**
+	 * This method provides an iterator for going through all the records
+	 * in file order, decoding each one as it is reached.
+	 * 
+	 * @return An iterator over all the records in the file.
+	 */
+	public Iterator<DBFRecord> recordsIterator()
+	{
+		return new Iterator<DBFRecord>()
+		{
+			private int nextIndex = 0;
+
+			public boolean hasNext()
+			{
+				return nextIndex < numRecords;
+			}
+
+			public DBFRecord next()
+			{
+				if (!hasNext())
+					throw new NoSuchElementException();
+				return getRecord(nextIndex++);
+			}
+
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * This method releases the file. Note that the mapping itself is
+	 * released by the garbage collector.
+	 * 
+	 * @throws IOException Thrown when closing the file fails.
+	 */
+	public void close() throws IOException
+	{
+		channel.close();
+	}
+
+	/**
+	 * This helper method gets the mapped segment holding the record at
+	 * recordIndex. Note that everything reads the segments with absolute
+	 * gets only, so it is safe for many threads to read from the table at once.
+	 */
+	private MappedByteBuffer getSegment(int recordIndex)
+	{
+		if ((recordIndex < 0) || (recordIndex >= numRecords))
+			throw new IndexOutOfBoundsException("Record " + recordIndex + " of " + numRecords);
+		return segments[recordIndex / recordsPerSegment];
+	}
+
+	/**
+	 * This helper method gets where the record at recordIndex starts inside its segment.
+	 */
+	private int getPosition(int recordIndex)
+	{
+		return (recordIndex % recordsPerSegment) * recordLength;
+	}
+
+	/**
+	 * This helper method tests to see if every record's key is greater
+	 * than the one before it, which is what a binary search needs.
+	 */
+	private boolean isInKeyOrder()
+	{
+		for (int i = 1; i < numRecords; i++)
+		{
+			if (compareKey(i - 1, getData(i, header.getKeyIndex())) >= 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * This helper method binary searches a file that is in key order for
+	 * the record with the key argument.
+	 * 
+	 * @return The index of the record, or -1 if there is none.
+	 */
+	private int findKey(Comparable<?> key)
+	{
+		// A KEY OF THE WRONG KIND CAN'T BE HERE, JUST LIKE WITH A HASH TABLE
+		boolean textKeys = header.getField(header.getKeyIndex()).getType() == DBFFieldType.C;
+		if (textKeys ? !(key instanceof String) : !(key instanceof Number))
+			return -1;
+
+		int low = 0;
+		int high = numRecords - 1;
+		while (low <= high)
+		{
+			int middle = (low + high) >>> 1;
+			int comparison = compareKey(middle, key);
+			if (comparison < 0)
+				low = middle + 1;
+			else if (comparison > 0)
+				high = middle - 1;
+			else
+			{
+				// NUMBERS ARE COMPARED BY VALUE, BUT A Long AND A Double
+				// ARE DIFFERENT KEYS, AS THEY ARE IN A HASH TABLE
+				if (key.equals(getData(middle, header.getKeyIndex())))
+					return middle;
+				return -1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * This helper method compares the key of the record at recordIndex to
+	 * the key argument, numbers by value and text as text.
+	 */
+	private int compareKey(int recordIndex, Object key)
+	{
+		int keyIndex = header.getKeyIndex();
+		if (header.getField(keyIndex).getType() == DBFFieldType.C)
+			return getString(recordIndex, keyIndex).compareTo((String)key);
+		return Double.compare(getDouble(recordIndex, keyIndex), ((Number)key).doubleValue());
+	}
+}
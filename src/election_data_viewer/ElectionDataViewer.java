@@ -374,22 +374,21 @@ public class ElectionDataViewer extends JFrame
 	 *It only requires the input of the column heads. 
 	 */
 	public Object[][] useAllKeys(Object[] columnLabels){
-		//retrieve the key for election results
-		Comparable theKey = dataModel.getElectionResults().getTree().firstKey();
+		//retrieve the election results
+		DBFTable results = dataModel.getElectionResults();
 		//initialize the data object such that it will have as many rows as there are in election results
 		//and columns as it has fields
-		Object[][] data= new Object[dataModel.getElectionResults().getNumRecords()+1]
-					[dataModel.getElectionResults().getRecord(theKey).getNumFields()];
+		Object[][] data= new Object[results.getNumRecords()+1][results.getNumFields()];
 		//fill in the column labels
 		for(int i=0; i<columnLabels.length; i++){
 			data[0][i]=columnLabels[i];
 		}
 		//loop through each row and within that loop through each field and fill in the correct information
-		for(int i=1; i<dataModel.getElectionResults().getNumRecords()+1; i++){
-			for(int j=0; j<dataModel.getElectionResults().getRecord(theKey).getNumFields(); j++){
-				data[i][j]= dataModel.getElectionResults().getRecord(theKey).getAllData()[j];
+		for(int i=1; i<results.getNumRecords()+1; i++){
+			DBFRecord record = results.getRecordAt(i-1);
+			for(int j=0; j<record.getNumFields(); j++){
+				data[i][j]= record.getData(j);
 			}
-			theKey=dataModel.getElectionResults().getTree().higherKey(theKey);
 		}
 		return data;
 	}
@@ -463,16 +462,16 @@ public class ElectionDataViewer extends JFrame
 		String hexColor ="#";
 		for(int j=0; j<dataModel.getParties().getNumFields()-1; j++){
 			/*In order to decode what this monstrosity does
-			 * 1)(Comparable)dataModel.getCandidates().getRecord(theKey).getAllData()[1] gets the candidate's party and
+			 * 1)(Comparable)dataModel.getCandidates().getRecord(theKey).getData(1) gets the candidate's party and
 			 * converts it to a Comparable so it can be used as a key.
-			 * 2)dataModel.getParties().getRecord(1).getAllData()[j+1] gets the relevant r,g, or b color code.
+			 * 2)dataModel.getParties().getRecord(1).getData(j+1) gets the relevant r,g, or b color code.
 			 * 3)In order to get an Integer, we need this to be a string, so we convert it to a string and then pass
 			 * it to the static decode method.
 			 * 4)Finally using the intValue() method of Integer the value is converted to an integer so we can later
 			 * convert this to a hexadecimal number to be used in altering the color of the winner of the state.
 			 */
-			Comparable one = (Comparable)dataModel.getCandidates().getRecord((Comparable)candidate).getAllData()[1];
-			Object two = dataModel.getParties().getRecord(one).getAllData()[j+1];
+			Comparable one = (Comparable)dataModel.getCandidates().getRecord((Comparable)candidate).getData(1);
+			Object two = dataModel.getParties().getRecord(one).getData(j+1);
 			int hexTemp = Integer.decode(two.toString()).intValue();
 			String first =Integer.toHexString(hexTemp/16)+Integer.toHexString(hexTemp % 16);
 			hexColor+=first;
@@ -558,14 +557,13 @@ public class ElectionDataViewer extends JFrame
 	 * of the GUI overall. 
 	 */
 	public void setLowerSouth(){
-		// retrieve the key for reelection results
-		Comparable theKey = dataModel.getElectionResults().getTree().firstKey();
+		// retrieve the election results
+		DBFTable results = dataModel.getElectionResults();
 		Candidate[] candidates = candidateNames();
 		BigDecimal electoralVotes= new BigDecimal(0);
-		while(theKey!=null){
+		for(int i=0; i<results.getNumRecords(); i++){
 			//add up all the electoral votes, continue until there are no more electoral votes to add
-			electoralVotes=electoralVotes.add(new BigDecimal(dataModel.getElectionResults().getRecord(theKey).getEV()));
-			theKey = dataModel.getElectionResults().getTree().higherKey(theKey);
+			electoralVotes=electoralVotes.add(BigDecimal.valueOf(results.getRecordAt(i).getLong(2)));
 		}
 		//calculate how many electoral votes each candidate received
 		candidates= calculateEV(candidates,data);	
@@ -580,7 +578,7 @@ public class ElectionDataViewer extends JFrame
 			for(int j=0; j<colors.length; j++){
 				colors[j]= Integer.decode(dataModel.getParties().getRecord((Comparable)dataModel.getCandidates().
 						getRecord((Comparable)candidates[i].getCandidate()).
-						getAllData()[1]).getAllData()[j+1].toString()).intValue();
+						getData(1)).getData(j+1).toString()).intValue();
 			}
 			//set the colors
 			String color = correctColor(candidates[i].getCandidate());
@@ -616,9 +614,9 @@ public class ElectionDataViewer extends JFrame
 	 * each candidate received
 	 */
 	public Candidate[] calculateEV(Candidate[] candidates, Object[][]data){
-		//get the necessary key
-		Comparable theKey = dataModel.getElectionResults().getTree().firstKey();
-		for(int i=1; theKey!=null; i++){
+		//get the election results
+		DBFTable results = dataModel.getElectionResults();
+		for(int i=1; i<results.getNumRecords()+1; i++){
 			boolean purple=true;
 			//test if the current line is split, if not, change the boolean to false.
 			//We know it is not a split vote if it matches at least one candidate in candidates.
@@ -630,9 +628,7 @@ public class ElectionDataViewer extends JFrame
 				}
 			}
 			if(purple)
-				splitVotesCase(theKey, candidates);
-			//increment key
-			theKey = dataModel.getElectionResults().getTree().higherKey(theKey);
+				splitVotesCase(results.getKeyAt(i-1), candidates);
 		}
 		return candidates;
 	}
@@ -663,11 +659,10 @@ public class ElectionDataViewer extends JFrame
 	 * this function searches through all the candidates and returns an array of Candidate objects
 	 */
 	public Candidate[] candidateNames(){
-		Candidate[] candidates = new Candidate[dataModel.getCandidates().getNumberOfRecords()];
-		Comparable theKey = dataModel.getCandidates().getTree().firstKey();
-		for(int i=0; theKey!=null; i++){
-			candidates[i]= new Candidate((String)dataModel.getCandidates().getRecord(theKey).getData(0),i);
-			theKey = dataModel.getCandidates().getTree().higherKey(theKey);
+		DBFTable candidatesTable = dataModel.getCandidates();
+		Candidate[] candidates = new Candidate[candidatesTable.getNumberOfRecords()];
+		for(int i=0; i<candidatesTable.getNumRecords(); i++){
+			candidates[i]= new Candidate((String)candidatesTable.getRecordAt(i).getData(0),i);
 		}
 		return candidates;
 	}
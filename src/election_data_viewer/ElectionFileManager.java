@@ -9,7 +9,9 @@ import javax.swing.JEditorPane;
 import javax.swing.JScrollPane;
 import javax.swing.JTable;
 import javax.swing.filechooser.FileFilter;
+import javax.swing.filechooser.FileView;
 
+import dbf_data.DBFCatalog;
 import dbf_data.DBFField;
 import dbf_data.DBFFileIO;
 import dbf_data.DBFRecord;
@@ -28,6 +30,7 @@ public class ElectionFileManager
 	private ElectionDataViewer view;
 	private DBFFileIO dbfFileIO;
 	private DBFFileFilter dbfFilter;
+	private DBFCatalog mapsCatalog;
 	private static final String MAPS_DIRECTORY = "./setup/maps/";
 	private static final String CANDIDATES_TABLE = "USAPresidentialElectionCandidates";
 	private static final String PARTIES_TABLE = "USAElectionsParties.dbf";
@@ -48,8 +51,11 @@ public class ElectionFileManager
 		// WE'LL USE THIS FOR LOADING DBF FILES
 		dbfFileIO = new DBFFileIO();
 		
+		// THIS KNOWS WHAT'S IN EACH MAP FILE WITHOUT LOADING THEM
+		mapsCatalog = new DBFCatalog(new File(MAPS_DIRECTORY));
+
 		// THIS WILL FILTER OUT ALL BUT THE .DBF FILES
-		dbfFilter = new DBFFileFilter();
+		dbfFilter = new DBFFileFilter(mapsCatalog);
 	}
 	
 	// ACCESSOR METHOD
@@ -83,11 +89,24 @@ public class ElectionFileManager
 	 */
 	public void promptToOpen()
 	{
+		// BRING THE CATALOG UP TO DATE, WHICH ONLY READS THE HEADERS OF
+		// FILES THAT ARE NEW OR HAVE CHANGED SINCE IT WAS LAST INDEXED
+		try
+		{
+			mapsCatalog.refresh();
+		}
+		catch(IOException ioe)
+		{
+			// THEN THE FILES ARE JUST LISTED WITHOUT THEIR DETAILS
+		}
+
 		// LET'S KEEP OUR MAPS IN THE data/maps DIRECTORY
 		JFileChooser openDialog = new JFileChooser(MAPS_DIRECTORY);
 		
-		// WE ONLY WANT THE USER TO SEE THE .dbf FILES
+		// WE ONLY WANT THE USER TO SEE THE .dbf FILES, ALONG WITH THE
+		// YEAR AND NUMBER OF RECORDS OF EACH ONE THE CATALOG KNOWS
 		openDialog.setFileFilter(dbfFilter);
+		openDialog.setFileView(new DBFCatalogFileView(mapsCatalog));
 		
 		// WHAT BUTTON DID THE USER CLICK?
 		int result = openDialog.showOpenDialog(view);
@@ -145,6 +164,45 @@ public class ElectionFileManager
 		}
 	}
 
+	/**
+	 * This method finds what the catalog argument knows about the file
+	 * argument, if the file is in the catalog's directory.
+	 * 
+	 * @param catalog The catalog to look in.
+	 * 
+	 * @param file The file to look for.
+	 * 
+	 * @return The file's entry, or null if the catalog doesn't have one.
+	 */
+	static DBFCatalog.Entry getCatalogEntry(DBFCatalog catalog, File file)
+	{
+		try
+		{
+			File directory = file.getCanonicalFile().getParentFile();
+			if ((directory == null) || !directory.equals(catalog.getDirectory().getCanonicalFile()))
+				return null;
+		}
+		catch(IOException ioe)
+		{
+			return null;
+		}
+		return catalog.getEntry(file.getName());
+	}
+
+	/**
+	 * This method tests to see if the catalog entry argument describes an
+	 * election results file the user can open, which means it's for a
+	 * year and isn't one of the candidates tables that go along with them.
+	 * 
+	 * @param entry The catalog entry for the file.
+	 * 
+	 * @return true if the file can be opened, false otherwise.
+	 */
+	static boolean isElectionResults(DBFCatalog.Entry entry)
+	{
+		return (entry.getYear() >= 0) && !entry.getFileName().startsWith(CANDIDATES_TABLE);
+	}
+
 	/**
 	 * Loads all the party data just once. There have only
 	 * been a handful, so we'll just keep one table for this
@@ -184,12 +242,30 @@ public class ElectionFileManager
  */
 class DBFFileFilter extends FileFilter
 {
+	// WHAT'S IN THE MAP FILES
+	private DBFCatalog catalog;
+
+	/**
+	 * This constructor keeps the catalog used to tell which files are
+	 * election results.
+	 * 
+	 * @param initCatalog Catalog of the maps directory.
+	 */
+	public DBFFileFilter(DBFCatalog initCatalog)
+	{
+		catalog = initCatalog;
+	}
+
 	/**
 	 * This method only allows the user to view .dbf files inside the JFileChooser.
+	 * Files the catalog knows about are only shown if they're election results.
 	 */
 	public boolean accept(File file) 
 	{
-		return file.getName().endsWith(".dbf");
+		if (!file.getName().endsWith(".dbf"))
+			return false;
+		DBFCatalog.Entry entry = ElectionFileManager.getCatalogEntry(catalog, file);
+		return (entry == null) || ElectionFileManager.isElectionResults(entry);
 	}
 
 	/**
@@ -199,4 +275,47 @@ class DBFFileFilter extends FileFilter
 	{
 		return ".dbf";
 	}
-}
\ No newline at end of file
+}
+
+/**
+ * This class is used for showing the year and number of records of each
+ * file the catalog knows about inside the JFileChooser, without loading it.
+ */
+class DBFCatalogFileView extends FileView
+{
+	// WHAT'S IN THE MAP FILES
+	private DBFCatalog catalog;
+
+	/**
+	 * This constructor keeps the catalog the descriptions come from.
+	 * 
+	 * @param initCatalog Catalog of the maps directory.
+	 */
+	public DBFCatalogFileView(DBFCatalog initCatalog)
+	{
+		catalog = initCatalog;
+	}
+
+	/**
+	 * This method names the file with its year and number of records, or
+	 * leaves it to the look and feel if the catalog doesn't know it.
+	 */
+	public String getName(File file)
+	{
+		DBFCatalog.Entry entry = ElectionFileManager.getCatalogEntry(catalog, file);
+		if (entry == null)
+			return null;
+		String details = entry.getNumberOfRecords() + " records";
+		if (entry.getYear() >= 0)
+			details = entry.getYear() + ", " + details;
+		return file.getName() + " (" + details + ")";
+	}
+
+	/**
+	 * This method describes the file the same way it's named.
+	 */
+	public String getDescription(File file)
+	{
+		return getName(file);
+	}
+}
@@ -0,0 +1,136 @@
+package dbf_data;
+
+import java.util.ArrayList;
+
+/**
+ * This program checks that DBFIndex finds records by number exactly, so
+ * that Longs too big to be exact as Doubles aren't mixed up, while a Long
+ * and a Double that are equal still find the same records. It prints each
+ * check and exits with status 1 if any of them fail.
+ * 
+ * Compile it along with the src classes and run it, for example:
+ * 
+ * 		javac -d out src/dbf_data/*.java test/dbf_data/*.java
+ * 		java -cp out dbf_data.DBFIndexTest
+ * 
+ * @author Aaron Meltzer
+ */
+public class DBFIndexTest
+{
+	// TWO LONGS ABOVE 2^53 THAT ARE THE SAME DOUBLE
+	private static final long BIG = 9007199254740992L;
+	private static final long BIGGER = 9007199254740993L;
+
+	// HOW MANY CHECKS FAILED
+	private static int failures;
+
+	/**
+	 * Runs all the checks.
+	 * 
+	 * @param args Not used.
+	 */
+	public static void main(String[] args)
+	{
+		testBigLongs(false);
+		testBigLongs(true);
+		testBigLongRange();
+		testMixedNumbers();
+		if (failures > 0)
+		{
+			System.out.println(failures + " FAILED");
+			System.exit(1);
+		}
+		System.out.println("ALL PASSED");
+	}
+
+	/**
+	 * Two Longs above 2^53 must each find only their own record.
+	 */
+	private static void testBigLongs(boolean sorted)
+	{
+		DBFTable table = makeTable();
+		DBFIndex index = sorted ? table.createSortedIndex("N") : table.createIndex("N");
+		String name = sorted ? "sorted" : "hash";
+		ArrayList<DBFRecord> big = index.find(Long.valueOf(BIG));
+		ArrayList<DBFRecord> bigger = index.find(Long.valueOf(BIGGER));
+		check(name + " big longs: " + BIG, (big.size() == 1) && (big.get(0) == table.getRecord("a")));
+		check(name + " big longs: " + BIGGER, (bigger.size() == 1) && (bigger.get(0) == table.getRecord("b")));
+		check(name + " big longs: values", index.getNumValues() == 4);
+
+		// CHANGING ONE MUSTN'T TAKE THE OTHER ALONG WITH IT
+		table.getRecord("a").setLong(1, 1);
+		check(name + " big longs: after change", (index.find(Long.valueOf(BIG)).size() == 0) && (index.find(Long.valueOf(BIGGER)).size() == 1));
+	}
+
+	/**
+	 * A range that ends between two Longs above 2^53 must only include the first.
+	 */
+	private static void testBigLongRange()
+	{
+		DBFTable table = makeTable();
+		DBFIndex index = table.createSortedIndex("N");
+		ArrayList<DBFRecord> range = index.findRange(Long.valueOf(BIG), Long.valueOf(BIG));
+		check("range: just " + BIG, (range.size() == 1) && (range.get(0) == table.getRecord("a")));
+		range = index.findRange(Long.valueOf(BIGGER), null);
+		check("range: from " + BIGGER, (range.size() == 1) && (range.get(0) == table.getRecord("b")));
+		range = index.findRange(Double.valueOf(2.5), Long.valueOf(BIG));
+		check("range: from 2.5 to " + BIG, (range.size() == 1) && (range.get(0) == table.getRecord("a")));
+		range = index.findRange(Double.valueOf(BIG), null);
+		check("range: from " + BIG + " as a Double", range.size() == 2);
+		range = index.findRange(Double.valueOf(1.5), Double.valueOf(2.5));
+		check("range: from 1.5 to 2.5", (range.size() == 2) && (range.get(0) == table.getRecord("c")));
+	}
+
+	/**
+	 * A Long and a Double that are equal must find the same records.
+	 */
+	private static void testMixedNumbers()
+	{
+		DBFTable table = makeTable();
+		DBFIndex index = table.createIndex("N");
+		check("mixed: 2.0 finds 2", index.findFirst(Double.valueOf(2.0)) == table.getRecord("c"));
+		check("mixed: 2 finds 2.0", index.find(Long.valueOf(2)).size() == 1);
+		check("mixed: 2.25 finds 2.25", index.findFirst(Double.valueOf(2.25)) == table.getRecord("d"));
+		check("mixed: 2.5 finds nothing", index.find(Double.valueOf(2.5)).size() == 0);
+	}
+
+	/**
+	 * This helper method makes a table with a number field holding two
+	 * Longs above 2^53, a 2.0, and a 2.25.
+	 */
+	private static DBFTable makeTable()
+	{
+		DBFTable table = new DBFTable();
+		table.addField("K", DBFFieldType.C, 5);
+		table.addField("N", DBFFieldType.N, 20);
+		addRecord(table, "a", Long.valueOf(BIG));
+		addRecord(table, "b", Long.valueOf(BIGGER));
+		addRecord(table, "c", Double.valueOf(2.0));
+		addRecord(table, "d", Double.valueOf(2.25));
+		return table;
+	}
+
+	/**
+	 * This helper method adds a record with the key and number arguments.
+	 */
+	private static void addRecord(DBFTable table, String key, Number num)
+	{
+		DBFRecord record = new DBFRecord(2);
+		record.setString(key, 0);
+		if (num instanceof Long)
+			record.setLong(num.longValue(), 1);
+		else
+			record.setDouble(num.doubleValue(), 1);
+		table.addRecord(key, record);
+	}
+
+	/**
+	 * This helper method reports a single check.
+	 */
+	private static void check(String name, boolean passed)
+	{
+		System.out.println((passed ? "ok     " : "FAILED ") + name);
+		if (!passed)
+			failures++;
+	}
+}
@@ -0,0 +1,97 @@
+package dbf_data;
+
+/**
+ * This program checks DBFRecord's behavior as fields are added to and
+ * removed from the table it's in, since the records share the table's
+ * layout and so have more storage slots than fields once fields change.
+ * It prints each check and exits with status 1 if any of them fail.
+ * 
+ * Compile it along with the src classes and run it, for example:
+ * 
+ * 		javac -d out src/dbf_data/*.java test/dbf_data/*.java
+ * 		java -cp out dbf_data.DBFRecordTest
+ * 
+ * @author Aaron Meltzer
+ */
+public class DBFRecordTest
+{
+	// HOW MANY CHECKS FAILED
+	private static int failures;
+
+	/**
+	 * Runs all the checks.
+	 * 
+	 * @param args Not used.
+	 */
+	public static void main(String[] args)
+	{
+		testGetAllDataAfterAddField();
+		testGetAllDataAfterRemoveField();
+		if (failures > 0)
+		{
+			System.out.println(failures + " FAILED");
+			System.exit(1);
+		}
+		System.out.println("ALL PASSED");
+	}
+
+	/**
+	 * getAllData must have one entry per field after a field is added.
+	 */
+	private static void testGetAllDataAfterAddField()
+	{
+		DBFTable table = makeTable();
+		table.addField("D", DBFFieldType.N, 5);
+		DBFRecord record = table.getRecord("k");
+		Object[] allData = record.getAllData();
+		check("add field: length", allData.length == 4);
+		check("add field: old data", "k".equals(allData[0]) && Long.valueOf(1).equals(allData[1]) && "c".equals(allData[2]));
+		check("add field: new field empty", allData[3] == null);
+
+		record.setLong(7, 3);
+		check("add field: new field set", Long.valueOf(7).equals(record.getAllData()[3]));
+	}
+
+	/**
+	 * getAllData must have one entry per field after a field is removed.
+	 */
+	private static void testGetAllDataAfterRemoveField()
+	{
+		DBFTable table = makeTable();
+		table.removeField(1);
+		Object[] allData = table.getRecord("k").getAllData();
+		check("remove field: length", allData.length == 2);
+		check("remove field: data", "k".equals(allData[0]) && "c".equals(allData[1]));
+
+		table.addField("D", DBFFieldType.N, 5);
+		allData = table.getRecord("k").getAllData();
+		check("remove then add field: length", allData.length == 3);
+	}
+
+	/**
+	 * This helper method makes a table with three fields and one record.
+	 */
+	private static DBFTable makeTable()
+	{
+		DBFTable table = new DBFTable();
+		table.addField("A", DBFFieldType.C, 5);
+		table.addField("B", DBFFieldType.N, 5);
+		table.addField("C", DBFFieldType.C, 5);
+		DBFRecord record = new DBFRecord(3);
+		record.setString("k", 0);
+		record.setLong(1, 1);
+		record.setString("c", 2);
+		table.addRecord("k", record);
+		return table;
+	}
+
+	/**
+	 * This helper method reports a single check.
+	 */
+	private static void check(String name, boolean passed)
+	{
+		System.out.println((passed ? "ok     " : "FAILED ") + name);
+		if (!passed)
+			failures++;
+	}
+}
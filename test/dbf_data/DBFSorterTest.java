@@ -0,0 +1,152 @@
+package dbf_data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * This program checks that DBFSorter's parallel sorts give exactly the
+ * same orders as its serial ones, and that a table big enough to be sorted
+ * in parallel still sorts by several fields stably, with ties in key order.
+ * It prints each check and exits with status 1 if any of them fail.
+ * 
+ * Compile it along with the src classes and run it, for example:
+ * 
+ * 		javac -d out src/dbf_data/*.java test/dbf_data/*.java
+ * 		java -cp out dbf_data.DBFSorterTest
+ * 
+ * @author Aaron Meltzer
+ */
+public class DBFSorterTest
+{
+	// BIG ENOUGH THAT THE PARALLEL SORTS ACTUALLY SPLIT UP THE WORK
+	private static final int NUM_KEYS = 200000;
+
+	// HOW MANY CHECKS FAILED
+	private static int failures;
+
+	/**
+	 * Runs all the checks.
+	 * 
+	 * @param args Not used.
+	 */
+	public static void main(String[] args)
+	{
+		testTextSort();
+		testPackedRanks();
+		testWideRanks();
+		testTableSort();
+		if (failures > 0)
+		{
+			System.out.println(failures + " FAILED");
+			System.exit(1);
+		}
+		System.out.println("ALL PASSED");
+	}
+
+	/**
+	 * A parallel text sort must keep equal text in the same order a serial one does.
+	 */
+	private static void testTextSort()
+	{
+		Random random = new Random(1);
+		String[] keys = new String[NUM_KEYS];
+		for (int i = 0; i < keys.length; i++)
+			keys[i] = "State" + random.nextInt(500);
+		check("text sort: parallel matches serial", Arrays.equals(DBFSorter.sort(keys, true), DBFSorter.sort(keys, false)));
+	}
+
+	/**
+	 * Ranks that pack into a long must sort the same in parallel.
+	 */
+	private static void testPackedRanks()
+	{
+		int[][] ranks = makeRanks(new int[] { 3, 60, 1000 });
+		boolean[] increasing = { true, false, true };
+		check("packed ranks: parallel matches serial", Arrays.equals(DBFSorter.sort(ranks, increasing, true), DBFSorter.sort(ranks, increasing, false)));
+	}
+
+	/**
+	 * Ranks that need more than 63 bits must sort the same in parallel.
+	 */
+	private static void testWideRanks()
+	{
+		int[][] ranks = makeRanks(new int[] { 1 << 22, 1 << 22, 1 << 22 });
+		boolean[] increasing = { false, true, false };
+		check("wide ranks: parallel matches serial", Arrays.equals(DBFSorter.sort(ranks, increasing, true), DBFSorter.sort(ranks, increasing, false)));
+	}
+
+	/**
+	 * A table past the parallel threshold must sort by several fields
+	 * just like a stable sort of its records in key order.
+	 */
+	private static void testTableSort()
+	{
+		Random random = new Random(2);
+		DBFTable table = new DBFTable();
+		table.addField("KEY", DBFFieldType.C, 10);
+		table.addField("WINNER", DBFFieldType.C, 10);
+		table.addField("VOTES", DBFFieldType.N, 10);
+		table.beginBatch();
+		for (int i = 0; i < DBFTable.SORT_PARALLEL_THRESHOLD + 1000; i++)
+		{
+			DBFRecord record = new DBFRecord(3);
+			String key = "Key" + i;
+			record.setString(key, 0);
+			record.setString("Candidate" + random.nextInt(40), 1);
+			record.setLong(random.nextInt(100), 2);
+			table.addRecord(key, record);
+		}
+		table.commitBatch();
+
+		ArrayList<DBFRecord> expected = new ArrayList<DBFRecord>();
+		Iterator<DBFRecord> it = table.recordsIterator();
+		while (it.hasNext())
+			expected.add(it.next());
+		Collections.sort(expected, new Comparator<DBFRecord>()
+		{
+			public int compare(DBFRecord record1, DBFRecord record2)
+			{
+				int comparison = record1.getString(1).compareTo(record2.getString(1));
+				if (comparison != 0)
+					return comparison;
+				return Long.compare(record2.getLong(2), record1.getLong(2));
+			}
+		});
+
+		ArrayList<DBFRecord> sorted = table.sortRecords(new String[] { "WINNER", "VOTES" }, new boolean[] { true, false });
+		boolean same = sorted.size() == expected.size();
+		for (int i = 0; same && (i < sorted.size()); i++)
+			same = sorted.get(i) == expected.get(i);
+		check("table sort: parallel matches a stable sort", same);
+	}
+
+	/**
+	 * This helper method makes random ranks for each field, each field's
+	 * below its entry in the numRanks argument.
+	 */
+	private static int[][] makeRanks(int[] numRanks)
+	{
+		Random random = new Random(numRanks.length);
+		int[][] ranks = new int[numRanks.length][NUM_KEYS];
+		for (int i = 0; i < numRanks.length; i++)
+		{
+			for (int j = 0; j < NUM_KEYS; j++)
+				ranks[i][j] = random.nextInt(numRanks[i]);
+		}
+		return ranks;
+	}
+
+	/**
+	 * This helper method reports a single check.
+	 */
+	private static void check(String name, boolean passed)
+	{
+		System.out.println((passed ? "ok     " : "FAILED ") + name);
+		if (!passed)
+			failures++;
+	}
+}